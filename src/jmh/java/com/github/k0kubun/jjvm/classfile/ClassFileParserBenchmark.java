@@ -0,0 +1,215 @@
+package com.github.k0kubun.jjvm.classfile;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+// Throughput of ClassFileParser over the boot classes of the host JDK. Each operation parses the next
+// class of them round-robin, so ops/s is classes/s, "bytes" is classfile bytes/s, and gc.alloc.rate.norm
+// of `-prof gc` is bytes allocated per class. Run it with `./gradlew jmh`.
+//
+// Since SymbolTable and interned descriptors are global, they are warmed up by the first pass and then
+// only looked up, like they would be for a VM loading many classes.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class ClassFileParserBenchmark {
+    // A jar or a directory of classfiles. The boot classes of the running JDK if empty.
+    @Param("")
+    public String source;
+
+    private ByteBuffer[] classes;
+    private int next;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        List<ByteBuffer> buffers = new ArrayList<>();
+        File rtJar = new File(System.getProperty("java.home"), "lib/rt.jar");
+        if (!source.isEmpty() && new File(source).isDirectory()) {
+            readDirectory(new File(source), buffers);
+        } else if (!source.isEmpty()) {
+            readJar(new File(source), buffers);
+        } else if (rtJar.isFile()) {
+            readJar(rtJar, buffers);
+        } else {
+            readModules(buffers);
+        }
+        buffers.removeIf(buffer -> !isSupported(buffer));
+        if (buffers.isEmpty()) {
+            throw new RuntimeException("no classfile was found in: " + (source.isEmpty() ? "the boot classes" : source));
+        }
+        Collections.shuffle(buffers, new Random(0)); // not to favor packages sorted first
+        classes = buffers.toArray(new ByteBuffer[0]);
+    }
+
+    // Only the parse which ClassLoader does: constant pool offsets, members and the shape of attributes
+    @Benchmark
+    public ClassFile parse(Counters counters) throws IOException {
+        return new ClassFileParser(ClassFileParser.Profile.Lean).parse(nextClass(counters));
+    }
+
+    // parse and every constant pool entry resolved, including Utf8 decoding
+    @Benchmark
+    public ConstantInfo constantPool(Counters counters) throws IOException {
+        ConstantPool constantPool = new ClassFileParser(ClassFileParser.Profile.Lean).parse(nextClass(counters)).getConstantPool();
+        ConstantInfo last = null;
+        for (int i = 1; i <= constantPool.getCount(); i++) {
+            ConstantInfo entry = constantPool.get(i);
+            if (entry != null) {
+                last = entry;
+            }
+        }
+        return last;
+    }
+
+    // parse and Code of every method decoded to Instruction[], skipping LineNumberTable and StackMapTable
+    @Benchmark
+    public int code(Counters counters) throws IOException {
+        ClassFile classFile = new ClassFileParser(ClassFileParser.Profile.Lean).parse(nextClass(counters));
+        int length = 0;
+        for (MethodInfo method : classFile.getMethods()) {
+            AttributeInfo.Code code = method.getCode();
+            if (code != null) {
+                length += code.getInstructions().length;
+            }
+        }
+        return length;
+    }
+
+    // parse and Code of every method packed for BytecodeInterpreter
+    @Benchmark
+    public int packedCode(Counters counters) throws IOException {
+        ClassFile classFile = new ClassFileParser(ClassFileParser.Profile.Lean).parse(nextClass(counters));
+        int length = 0;
+        for (MethodInfo method : classFile.getMethods()) {
+            AttributeInfo.Code code = method.getCode();
+            if (code != null) {
+                length += code.getPackedCode().getCode().length;
+            }
+        }
+        return length;
+    }
+
+    // `code` plus LineNumberTable and StackMapTable decoded eagerly, as the disassembler does
+    @Benchmark
+    public int attributes(Counters counters) throws IOException {
+        ClassFile classFile = new ClassFileParser(ClassFileParser.Profile.Full).parse(nextClass(counters));
+        int count = 0;
+        for (MethodInfo method : classFile.getMethods()) {
+            AttributeInfo.Code code = method.getCode();
+            if (code != null) {
+                count += code.getAttributes().length;
+            }
+        }
+        return count;
+    }
+
+    private ByteBuffer nextClass(Counters counters) {
+        ByteBuffer buffer = classes[next];
+        next = (next + 1 == classes.length ? 0 : next + 1);
+        counters.bytes += buffer.remaining();
+        return buffer;
+    }
+
+    // Skip classes using opcodes which are not implemented, so that all cases run the same classes.
+    private static boolean isSupported(ByteBuffer buffer) {
+        try {
+            for (MethodInfo method : new ClassFileParser().parse(buffer).getMethods()) {
+                if (method.getCode() != null) {
+                    method.getCode().getInstructions();
+                    method.getCode().getPackedCode();
+                }
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    private static void readJar(File file, List<ByteBuffer> buffers) throws IOException {
+        try (ZipFile jar = new ZipFile(file)) {
+            for (ZipEntry entry : Collections.list(jar.entries())) {
+                if (!entry.isDirectory() && entry.getName().endsWith(".class")) {
+                    try (InputStream stream = jar.getInputStream(entry)) {
+                        buffers.add(ByteBuffer.wrap(readAllBytes(stream)));
+                    }
+                }
+            }
+        }
+    }
+
+    private static void readDirectory(File directory, List<ByteBuffer> buffers) throws IOException {
+        try (Stream<Path> files = Files.walk(directory.toPath())) {
+            for (Path file : (Iterable<Path>)files::iterator) {
+                if (file.toString().endsWith(".class") && Files.isRegularFile(file)) {
+                    buffers.add(ByteBuffer.wrap(Files.readAllBytes(file)));
+                }
+            }
+        }
+    }
+
+    private static byte[] readAllBytes(InputStream stream) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        for (int length; (length = stream.read(chunk)) != -1;) {
+            bytes.write(chunk, 0, length);
+        }
+        return bytes.toByteArray();
+    }
+
+    // Java 9+ has no rt.jar. Read /modules of the jrt file system instead.
+    private static void readModules(List<ByteBuffer> buffers) throws IOException {
+        FileSystem jrt = FileSystems.getFileSystem(URI.create("jrt:/"));
+        try (Stream<Path> files = Files.walk(jrt.getPath("/modules"))) {
+            for (Path file : (Iterable<Path>)files::iterator) {
+                String name = file.toString();
+                if (name.endsWith(".class") && !name.endsWith("module-info.class")) {
+                    buffers.add(ByteBuffer.wrap(Files.readAllBytes(file)));
+                }
+            }
+        }
+    }
+}
@@ -4,26 +4,90 @@ import com.github.k0kubun.jjvm.classfile.ClassFile;
 import com.github.k0kubun.jjvm.classfile.ClassFileDisassembler;
 import com.github.k0kubun.jjvm.classfile.ClassFileParser;
 
+import java.io.BufferedWriter;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 // $ jjvmp [class file]
+// $ jjvmp [jar file]
 public class Disassembler {
     public static void main(String[] args) throws IOException {
         if (args.length != 1) {
-            System.out.println("Usage: jjvmp [class file]");
+            System.out.println("Usage: jjvmp [class file | jar file]");
             return;
         }
 
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+        try {
+            if (args[0].endsWith(".jar")) {
+                disassembleJar(args[0], out);
+            } else {
+                disassembleClass(args[0], out);
+            }
+        } finally {
+            out.flush();
+        }
+    }
+
+    private static void disassembleClass(String filename, Writer out) throws IOException {
         ClassFile classFile;
         try {
-            classFile = new ClassFileParser().parse(args[0]);
+            classFile = new ClassFileParser().parse(filename);
+        } catch (FileNotFoundException e) {
+            out.write("Failed to open: " + e.getMessage() + "\n");
+            return;
+        }
+
+        new ClassFileDisassembler(classFile).disassemble(out);
+        out.write("\n");
+    }
+
+    // Classes are disassembled in parallel, and written in the order of the jar. Only a window of
+    // classes ahead of the one being written is kept on memory.
+    private static void disassembleJar(String filename, Writer out) throws IOException {
+        ZipFile jar;
+        try {
+            jar = new ZipFile(filename);
         } catch (FileNotFoundException e) {
-            System.out.println("Failed to open: " + e.getMessage());
+            out.write("Failed to open: " + e.getMessage() + "\n");
             return;
         }
 
-        String disasm = new ClassFileDisassembler(classFile).disassemble();
-        System.out.println(disasm);
+        try {
+            List<ZipEntry> entries = Collections.list(jar.entries()).stream()
+                    .filter(entry -> !entry.isDirectory() && entry.getName().endsWith(".class"))
+                    .collect(Collectors.toList());
+            int window = 4 * ForkJoinPool.getCommonPoolParallelism();
+            Deque<CompletableFuture<String>> pending = new ArrayDeque<>();
+            for (int i = 0; i < entries.size() || !pending.isEmpty();) {
+                while (i < entries.size() && pending.size() < window) {
+                    ZipEntry entry = entries.get(i++);
+                    pending.add(CompletableFuture.supplyAsync(() -> disassembleEntry(jar, entry)));
+                }
+                out.write(pending.remove().join());
+            }
+        } finally {
+            jar.close();
+        }
+    }
+
+    private static String disassembleEntry(ZipFile jar, ZipEntry entry) {
+        try (InputStream stream = jar.getInputStream(entry)) {
+            return new ClassFileDisassembler(new ClassFileParser().parse(stream)).disassemble() + "\n";
+        } catch (IOException | RuntimeException e) {
+            return String.format("Failed to disassemble %s: %s\n\n", entry.getName(), e);
+        }
     }
 }
@@ -2,9 +2,13 @@ package com.github.k0kubun.jjvm;
 
 import com.github.k0kubun.jjvm.classfile.ClassFileParser.DescriptorParser;
 import com.github.k0kubun.jjvm.classfile.FieldType;
+import com.github.k0kubun.jjvm.virtualmachine.ClassLoadStatistics;
 import com.github.k0kubun.jjvm.virtualmachine.Value;
 import com.github.k0kubun.jjvm.virtualmachine.VirtualMachine;
 
+import java.io.File;
+import java.io.IOException;
+
 // $ jjvm [class file]
 public class JJVM {
     public static void main(String[] args) {
@@ -14,10 +18,28 @@ public class JJVM {
             System.exit(1);
         }
 
-        VirtualMachine vm = new VirtualMachine(options.getClassPath(), options.getTrace());
-        vm.callStaticMethod(
-                options.getClassName(), "main", DescriptorParser.parseMethod("([Ljava/lang/String;)V"),
-                new Value[]{ new Value(new FieldType.ArrayType(new FieldType.ObjectType("java/lang/String")), options.getArgs()) });
+        ClassLoadStatistics statistics = (options.getClassLoadStat() ? new ClassLoadStatistics() : null);
+        if (statistics != null) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> printClassLoadStatistics(options, statistics)));
+        }
+
+        try (VirtualMachine vm = new VirtualMachine(options.getClassPath(), options.getTrace(), options.getShareMode(),
+                options.getPrefetch(), statistics, options.getMaxFrames())) {
+            vm.callStaticMethod(
+                    options.getClassName(), "main", DescriptorParser.parseMethod("([Ljava/lang/String;)V"),
+                    new Value[]{ new Value(new FieldType.ArrayType(new FieldType.ObjectType("java/lang/String")), options.getArgs()) });
+        }
+    }
+
+    private static void printClassLoadStatistics(JJVMOptions options, ClassLoadStatistics statistics) {
+        statistics.printSummary(System.err);
+        if (options.getClassLoadStatFile() != null) {
+            try {
+                statistics.dump(new File(options.getClassLoadStatFile()));
+            } catch (IOException e) {
+                System.err.println(String.format("Failed to write '%s': %s", options.getClassLoadStatFile(), e.toString()));
+            }
+        }
     }
 
     private static void printHelp() {
@@ -36,6 +58,11 @@ public class JJVM {
         String className = null;
         String classPath = ".";
         boolean trace = false;
+        VirtualMachine.ShareMode shareMode = VirtualMachine.ShareMode.OFF;
+        boolean prefetch = false;
+        boolean classLoadStat = false;
+        String classLoadStatFile = null;
+        int maxFrames = VirtualMachine.DEFAULT_MAX_FRAMES;
 
         int i;
         for (i = 0; i < args.length; i++) {
@@ -58,6 +85,29 @@ public class JJVM {
                 System.exit(0);
             } else if (arg.equals("-Xjjvmtrace")) {
                 trace = true;
+            } else if (arg.equals("-Xjjvmshare:off")) {
+                shareMode = VirtualMachine.ShareMode.OFF;
+            } else if (arg.equals("-Xjjvmshare:dump")) {
+                shareMode = VirtualMachine.ShareMode.DUMP;
+            } else if (arg.equals("-Xjjvmshare:on")) {
+                shareMode = VirtualMachine.ShareMode.ON;
+            } else if (arg.equals("-Xjjvmprefetch")) {
+                prefetch = true;
+            } else if (arg.equals("-Xjjvmstat:classload")) {
+                classLoadStat = true;
+            } else if (arg.startsWith("-Xjjvmstat:classload=")) {
+                classLoadStat = true;
+                classLoadStatFile = arg.substring("-Xjjvmstat:classload=".length());
+            } else if (arg.startsWith("-Xjjvmmaxframes:")) {
+                try {
+                    maxFrames = Integer.parseInt(arg.substring("-Xjjvmmaxframes:".length()));
+                } catch (NumberFormatException e) {
+                    maxFrames = 0;
+                }
+                if (maxFrames <= 0) {
+                    System.err.println("Invalid maximum number of frames: " + arg);
+                    System.exit(1);
+                }
             } else {
                 System.err.println("Unrecognized option: " + arg);
                 System.exit(1);
@@ -68,7 +118,7 @@ public class JJVM {
         if (rest.length > 0) {
             System.arraycopy(args, i, rest, 0, rest.length);
         }
-        return new JJVMOptions(className, rest, classPath, trace);
+        return new JJVMOptions(className, rest, classPath, trace, shareMode, prefetch, classLoadStat, classLoadStatFile, maxFrames);
     }
 
     private static class JJVMOptions {
@@ -76,8 +126,14 @@ public class JJVM {
         private final Value.Object[] args;
         private final String classPath;
         private final boolean trace;
+        private final VirtualMachine.ShareMode shareMode;
+        private final boolean prefetch;
+        private final boolean classLoadStat;
+        private final String classLoadStatFile; // null unless -Xjjvmstat:classload=<file>
+        private final int maxFrames;
 
-        JJVMOptions(String className, String[] args, String classPath, boolean trace) {
+        JJVMOptions(String className, String[] args, String classPath, boolean trace, VirtualMachine.ShareMode shareMode,
+                    boolean prefetch, boolean classLoadStat, String classLoadStatFile, int maxFrames) {
             this.className = className;
             this.args = new Value.Object[args.length];
             for (int i = 0; i < args.length; i++) {
@@ -85,6 +141,11 @@ public class JJVM {
             }
             this.classPath = classPath;
             this.trace = trace;
+            this.shareMode = shareMode;
+            this.prefetch = prefetch;
+            this.classLoadStat = classLoadStat;
+            this.classLoadStatFile = classLoadStatFile;
+            this.maxFrames = maxFrames;
         }
 
         String getClassName() {
@@ -102,5 +163,25 @@ public class JJVM {
         boolean getTrace() {
             return trace;
         }
+
+        VirtualMachine.ShareMode getShareMode() {
+            return shareMode;
+        }
+
+        boolean getPrefetch() {
+            return prefetch;
+        }
+
+        boolean getClassLoadStat() {
+            return classLoadStat;
+        }
+
+        String getClassLoadStatFile() {
+            return classLoadStatFile;
+        }
+
+        int getMaxFrames() {
+            return maxFrames;
+        }
     }
 }
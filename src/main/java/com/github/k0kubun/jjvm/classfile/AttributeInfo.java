@@ -1,5 +1,7 @@
 package com.github.k0kubun.jjvm.classfile;
 
+import java.nio.ByteBuffer;
+
 public class AttributeInfo {
     private final String name;
 
@@ -11,40 +13,84 @@ public class AttributeInfo {
         return name;
     }
 
+    // Only max_stack and max_locals are read on parse. Instructions, the exception table and nested
+    // attributes are decoded on the first access to any of them, which is usually the first call of
+    // the method, so that methods never executed cost nothing but this object.
     public static class Code extends AttributeInfo {
-        private final int maxStack;
-        private final int maxLocals;
-        private final Instruction[] instructions;
-        private final ExceptionTableEntry[] exceptionTable;
-        private final AttributeInfo[] attributes;
-
-        Code(int maxStack, int maxLocals, Instruction[] instructions, ExceptionTableEntry[] exceptionTable, AttributeInfo[] attributes) {
+        private final ClassFileParser parser;
+        private final ByteBuffer buffer;
+        private final int offset; // of max_stack
+        private final ConstantPool constantPool;
+        private volatile Body body; // null until decoded
+        private volatile PackedCode packedCode; // null until packed
+
+        Code(ClassFileParser parser, ByteBuffer buffer, int offset, ConstantPool constantPool) {
             super("Code");
-            this.maxStack = maxStack;
-            this.maxLocals = maxLocals;
-            this.instructions = instructions;
-            this.exceptionTable = exceptionTable;
-            this.attributes = attributes;
+            this.parser = parser;
+            this.buffer = buffer;
+            this.offset = offset;
+            this.constantPool = constantPool;
         }
 
         public Instruction[] getInstructions() {
-            return instructions;
+            return getBody().instructions;
+        }
+
+        // The form used by BytecodeInterpreter, which is built without decoding Instruction[].
+        public PackedCode getPackedCode() {
+            PackedCode result = packedCode;
+            if (result == null) {
+                synchronized (this) {
+                    result = packedCode;
+                    if (result == null) {
+                        result = PackedCode.pack(buffer, offset + 8, buffer.getInt(offset + 4));
+                        packedCode = result;
+                    }
+                }
+            }
+            return result;
         }
 
         public int getMaxStack() {
-            return maxStack;
+            return buffer.getShort(offset) & 0xffff;
         }
 
         public int getMaxLocals() {
-            return maxLocals;
+            return buffer.getShort(offset + 2) & 0xffff;
         }
 
         public AttributeInfo[] getAttributes() {
-            return attributes;
+            return getBody().attributes;
         }
 
         public ExceptionTableEntry[] getExceptionTable() {
-            return exceptionTable;
+            return getBody().exceptionTable;
+        }
+
+        private Body getBody() {
+            Body result = body;
+            if (result == null) {
+                synchronized (this) {
+                    result = body;
+                    if (result == null) {
+                        result = parser.decodeCode(buffer, offset, constantPool);
+                        body = result;
+                    }
+                }
+            }
+            return result;
+        }
+
+        static class Body {
+            private final Instruction[] instructions;
+            private final ExceptionTableEntry[] exceptionTable;
+            private final AttributeInfo[] attributes;
+
+            Body(Instruction[] instructions, ExceptionTableEntry[] exceptionTable, AttributeInfo[] attributes) {
+                this.instructions = instructions;
+                this.exceptionTable = exceptionTable;
+                this.attributes = attributes;
+            }
         }
 
         public static class ExceptionTableEntry {
@@ -78,16 +124,38 @@ public class AttributeInfo {
         }
     }
 
+    // Decoded on parse by ClassFileParser.Profile.Debug and Full. Otherwise only the offset is kept and
+    // the table is decoded on the first access, e.g. by a stack trace.
     public static class LineNumberTable extends AttributeInfo {
-        private final LineNumberEntry[] lineNumberTable;
+        private final ClassFileParser parser;
+        private final ByteBuffer buffer;
+        private final int offset; // of line_number_table_length
+        private volatile LineNumberEntry[] lineNumberTable; // null until decoded
 
         LineNumberTable(LineNumberEntry[] lineNumberTable) {
-            super("LineNumberTable");
+            this(null, null, -1);
             this.lineNumberTable = lineNumberTable;
         }
 
+        LineNumberTable(ClassFileParser parser, ByteBuffer buffer, int offset) {
+            super("LineNumberTable");
+            this.parser = parser;
+            this.buffer = buffer;
+            this.offset = offset;
+        }
+
         public LineNumberEntry[] getLineNumberTable() {
-            return lineNumberTable;
+            LineNumberEntry[] result = lineNumberTable;
+            if (result == null) {
+                synchronized (this) {
+                    result = lineNumberTable;
+                    if (result == null) {
+                        result = parser.decodeLineNumberTable(buffer, offset);
+                        lineNumberTable = result;
+                    }
+                }
+            }
+            return result;
         }
 
         public static class LineNumberEntry {
@@ -109,14 +177,39 @@ public class AttributeInfo {
         }
     }
 
+    // Decoded on parse by ClassFileParser.Profile.Full only, since nothing verifies classes for now.
     public static class StackMapTable extends AttributeInfo {
-        private final StackMapFrame[] entries;
+        private final ClassFileParser parser;
+        private final ByteBuffer buffer;
+        private final int offset; // of number_of_entries
+        private volatile StackMapFrame[] entries; // null until decoded
 
         StackMapTable(StackMapFrame[] entries) {
-            super("StackMapTable");
+            this(null, null, -1);
             this.entries = entries;
         }
 
+        StackMapTable(ClassFileParser parser, ByteBuffer buffer, int offset) {
+            super("StackMapTable");
+            this.parser = parser;
+            this.buffer = buffer;
+            this.offset = offset;
+        }
+
+        public StackMapFrame[] getEntries() {
+            StackMapFrame[] result = entries;
+            if (result == null) {
+                synchronized (this) {
+                    result = entries;
+                    if (result == null) {
+                        result = parser.decodeStackMapTable(buffer, offset);
+                        entries = result;
+                    }
+                }
+            }
+            return result;
+        }
+
         public static class StackMapFrame {
             private final int tag;
 
@@ -1,23 +1,27 @@
 package com.github.k0kubun.jjvm.classfile;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class ClassFile {
     private final int minorVersion;
     private final int majorVersion;
-    private final ConstantInfo[] constantPool;
-    private final List<AccessFlag> accessFlags;
+    private final ConstantPool constantPool;
+    private final int accessFlags;
     private final ConstantInfo.Class thisClass;
     private final ConstantInfo.Class superClass;
     private final int[] interfaces;
     private final FieldInfo[] fields;
     private final MethodInfo[] methods;
     private final AttributeInfo[] attributes;
+    private volatile Map<String, Map<MethodInfo.Descriptor, MethodInfo>> methodIndex; // null until the first lookup
+    private volatile Map<String, FieldInfo> fieldIndex; // null until the first lookup
 
     private final static int MAGIC = 0xCAFEBABE;
 
-    ClassFile(int magic, int minorVersion, int majorVersion, ConstantInfo[] constantPool, int accessFlags, int thisClass,
+    ClassFile(int magic, int minorVersion, int majorVersion, ConstantPool constantPool, int accessFlags, int thisClass,
               int superClass, int[] interfaces, FieldInfo[] fields, MethodInfo[] methods, AttributeInfo[] attributes) {
         if (magic != MAGIC) {
             throw new RuntimeException(String.format("unexpected magic: 0x%X", magic));
@@ -25,9 +29,9 @@ public class ClassFile {
         this.minorVersion = minorVersion;
         this.majorVersion = majorVersion;
         this.constantPool = constantPool;
-        this.accessFlags = AccessFlag.fromInt(accessFlags);
-        this.thisClass = (ConstantInfo.Class)constantPool[thisClass - 1];
-        this.superClass = (superClass == 0 ? null : (ConstantInfo.Class)constantPool[superClass - 1]);
+        this.accessFlags = accessFlags;
+        this.thisClass = (ConstantInfo.Class)constantPool.get(thisClass);
+        this.superClass = (superClass == 0 ? null : (ConstantInfo.Class)constantPool.get(superClass));
         this.interfaces = interfaces;
         this.fields = fields;
         this.methods = methods;
@@ -56,8 +60,17 @@ public class ClassFile {
         return superClass.getName();
     }
 
+    // Built on each call. Use isXxx() to test a flag.
     public List<AccessFlag> getAccessFlags() {
-        return accessFlags;
+        return AccessFlag.fromInt(accessFlags);
+    }
+
+    public boolean isInterface() {
+        return (accessFlags & AccessFlag.ACC_INTERFACE.getValue()) != 0;
+    }
+
+    public boolean isAbstract() {
+        return (accessFlags & AccessFlag.ACC_ABSTRACT.getValue()) != 0;
     }
 
     public MethodInfo[] getMethods() {
@@ -68,7 +81,34 @@ public class ClassFile {
         return fields;
     }
 
-    public ConstantInfo[] getConstantPool() {
+    // Returns a method declared by this class, or null. Superclasses are not searched.
+    public MethodInfo findMethod(String name, MethodInfo.Descriptor descriptor) {
+        Map<String, Map<MethodInfo.Descriptor, MethodInfo>> index = methodIndex;
+        if (index == null) {
+            index = new HashMap<>();
+            for (MethodInfo method : methods) {
+                index.computeIfAbsent(method.getName(), n -> new HashMap<>(2)).put(method.getDescriptor(), method);
+            }
+            methodIndex = index; // racing threads build equivalent ones
+        }
+        Map<MethodInfo.Descriptor, MethodInfo> overloads = index.get(name);
+        return (overloads == null ? null : overloads.get(descriptor));
+    }
+
+    // Returns a field declared by this class, or null. Superclasses are not searched.
+    public FieldInfo findField(String name) {
+        Map<String, FieldInfo> index = fieldIndex;
+        if (index == null) {
+            index = new HashMap<>();
+            for (FieldInfo field : fields) {
+                index.put(field.getName(), field);
+            }
+            fieldIndex = index; // racing threads build equivalent ones
+        }
+        return index.get(name);
+    }
+
+    public ConstantPool getConstantPool() {
         return constantPool;
     }
 
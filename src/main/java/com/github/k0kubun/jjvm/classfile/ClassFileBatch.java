@@ -0,0 +1,157 @@
+package com.github.k0kubun.jjvm.classfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+// Parses every classfile in a jar or a directory on a ForkJoinPool. Each class is read, parsed and
+// handed to the consumer by the same worker, so that only about `parallelism` classfiles are in memory
+// at once unless the consumer keeps them. Results are given in no particular order.
+public class ClassFileBatch {
+    // Entries parsed by a task without splitting it further
+    private static final int LEAF_SIZE = 16;
+
+    private final File source;
+    private final ForkJoinPool pool;
+
+    public ClassFileBatch(File source) {
+        this(source, ForkJoinPool.commonPool());
+    }
+
+    public ClassFileBatch(File source, ForkJoinPool pool) {
+        this.source = source;
+        this.pool = pool;
+    }
+
+    // `consumer` is called concurrently from worker threads. Unreadable subdirectories are skipped.
+    public void parseAll(Consumer<Result> consumer) throws IOException {
+        if (source.isDirectory()) {
+            Path root = source.toPath();
+            List<String> names = new ArrayList<>();
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                    if (file.toString().endsWith(".class") && Files.isRegularFile(file)) {
+                        names.add(root.relativize(file).toString().replace(File.separatorChar, '/'));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            Collections.sort(names);
+            pool.invoke(new ParseTask(names, 0, names.size(), name -> Files.readAllBytes(new File(source, name).toPath()), consumer));
+        } else {
+            try (ZipFile jar = new ZipFile(source)) { // ZipFile is safe to read from multiple threads
+                List<String> names = new ArrayList<>();
+                jar.stream().filter(entry -> !entry.isDirectory() && entry.getName().endsWith(".class"))
+                        .forEach(entry -> names.add(entry.getName()));
+                pool.invoke(new ParseTask(names, 0, names.size(), name -> readEntry(jar, name), consumer));
+            }
+        }
+    }
+
+    private static byte[] readEntry(ZipFile jar, String name) throws IOException {
+        ZipEntry entry = jar.getEntry(name);
+        try (InputStream stream = jar.getInputStream(entry)) {
+            byte[] bytes = new byte[(int)entry.getSize()];
+            int length = 0;
+            for (int n; length < bytes.length && (n = stream.read(bytes, length, bytes.length - length)) != -1;) {
+                length += n;
+            }
+            if (length != bytes.length) {
+                throw new IOException(String.format("truncated entry '%s' in '%s'", name, jar.getName()));
+            }
+            return bytes;
+        }
+    }
+
+    private interface EntryReader {
+        byte[] read(String name) throws IOException;
+    }
+
+    private static class ParseTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<String> names;
+        private final int from;
+        private final int to;
+        private final EntryReader reader;
+        private final Consumer<Result> consumer;
+
+        ParseTask(List<String> names, int from, int to, EntryReader reader, Consumer<Result> consumer) {
+            this.names = names;
+            this.from = from;
+            this.to = to;
+            this.reader = reader;
+            this.consumer = consumer;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > LEAF_SIZE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ParseTask(names, from, middle, reader, consumer),
+                        new ParseTask(names, middle, to, reader, consumer));
+                return;
+            }
+
+            ClassFileParser parser = new ClassFileParser();
+            for (int i = from; i < to; i++) {
+                String name = names.get(i);
+                Result result;
+                try {
+                    result = new Result(name, parser.parse(ByteBuffer.wrap(reader.read(name))), null);
+                } catch (IOException | RuntimeException e) {
+                    result = new Result(name, null, e);
+                }
+                consumer.accept(result);
+            }
+        }
+    }
+
+    // A parsed class, or the failure of parsing it
+    public static class Result {
+        private final String name;
+        private final ClassFile classFile;
+        private final Exception error;
+
+        Result(String name, ClassFile classFile, Exception error) {
+            this.name = name;
+            this.classFile = classFile;
+            this.error = error;
+        }
+
+        // like "java/lang/Object.class"
+        public String getName() {
+            return name;
+        }
+
+        // null if it failed
+        public ClassFile getClassFile() {
+            return classFile;
+        }
+
+        // null if it succeeded
+        public Exception getError() {
+            return error;
+        }
+    }
+}
@@ -1,9 +1,14 @@
 package com.github.k0kubun.jjvm.classfile;
 
+import java.io.IOException;
+import java.util.Formatter;
+import java.util.Map;
 import java.util.StringJoiner;
 import com.github.k0kubun.jjvm.classfile.Instruction.Opcode;
 
 public class ClassFileDisassembler {
+    private static final String[] INDENTS = { "", "  ", "    ", "      ", "        " }; // by indent level
+
     private final ClassFile classfile;
 
     public ClassFileDisassembler(ClassFile classfile) {
@@ -11,61 +16,68 @@ public class ClassFileDisassembler {
     }
 
     public String disassemble() {
+        StringBuilder builder = new StringBuilder();
+        try {
+            disassemble(builder);
+        } catch (IOException e) {
+            throw new RuntimeException(e); // StringBuilder doesn't throw it
+        }
+        return builder.toString();
+    }
+
+    // Write the listing to `out` while walking the classfile, instead of building it on memory.
+    public void disassemble(Appendable out) throws IOException {
         StringJoiner flags = new StringJoiner(", ");
         classfile.getAccessFlags().stream().forEach(f -> flags.add(f.toString()));
 
-        StringBuilder builder = new StringBuilder();
-        builder.append(String.format("class %s\n", classfile.getThisClassName()));
-        builder.append(String.format("  minor version: %d\n", classfile.getMinorVersion()));
-        builder.append(String.format("  major version: %d\n", classfile.getMajorVersion()));
-        builder.append(String.format("  flags: %s\n", flags.toString()));
-        builder.append(disassembleConstantPool());
-        builder.append(disassembleMethods());
+        Formatter formatter = new Formatter(out);
+        formatter.format("class %s\n", classfile.getThisClassName());
+        formatter.format("  minor version: %d\n", classfile.getMinorVersion());
+        formatter.format("  major version: %d\n", classfile.getMajorVersion());
+        formatter.format("  flags: %s\n", flags.toString());
+        disassembleConstantPool(formatter);
+        disassembleMethods(formatter);
         for (AttributeInfo attribute : classfile.getAttributes()) {
-            builder.append(disassembleAttribute(attribute, null, 0));
+            disassembleAttribute(formatter, attribute, null, 0);
+        }
+        if (formatter.ioException() != null) { // Formatter doesn't throw it
+            throw formatter.ioException();
         }
-        return builder.toString();
     }
 
-    private String disassembleConstantPool() {
-        StringBuilder builder = new StringBuilder();
-        builder.append("Constant pool:\n");
-        for (int i = 0; i < classfile.getConstantPool().length; i++) {
-            ConstantInfo info = classfile.getConstantPool()[i];
-            builder.append(String.format("%5s = %-19s", String.format("#%d", i + 1), info.getType().toString()));
+    private void disassembleConstantPool(Formatter out) {
+        out.format("Constant pool:\n");
+        for (int i = 0; i < classfile.getConstantPool().getCount(); i++) {
+            ConstantInfo info = classfile.getConstantPool().get(i + 1);
+            out.format("%5s = %-19s", "#" + (i + 1), info.getType().toString());
 
             if (info instanceof ConstantInfo.NamedInfo) {
                 int index = ((ConstantInfo.NamedInfo)info).getNameIndex();
-                builder.append(String.format("#%-14d", index));
+                out.format("#%-14d", index);
             } else if (info instanceof ConstantInfo.ClassRefInfo) {
                 int classIndex = ((ConstantInfo.ClassRefInfo)info).getClassIndex();
                 int nameAndTypeIndex = ((ConstantInfo.ClassRefInfo)info).getNameAndTypeIndex();
-                builder.append(String.format("#%-14s",
-                        String.format("%d.#%d", classIndex, nameAndTypeIndex)));
+                out.format("#%-14s", classIndex + ".#" + nameAndTypeIndex);
             } else if (info instanceof ConstantInfo.Utf8) {
-                builder.append(((ConstantInfo.Utf8) classfile.getConstantPool()[i]).getString());
+                out.format("%s", ((ConstantInfo.Utf8)info).getString());
             } else if (info instanceof ConstantInfo.NameAndType) {
-                builder.append(String.format("#%-14s// %s",
-                        String.format("%d:#%d",
-                                ((ConstantInfo.NameAndType)info).getNameIndex(),
-                                ((ConstantInfo.NameAndType)info).getDescriptorIndex()),
-                        getNameAndType(i + 1)));
+                out.format("#%-14s// %s",
+                        ((ConstantInfo.NameAndType)info).getNameIndex() + ":#" + ((ConstantInfo.NameAndType)info).getDescriptorIndex(),
+                        getNameAndType(i + 1));
             } else {
-                builder.append("[TODO]");
+                out.format("[TODO]");
             }
 
             String label = getConstantLabel(info);
             if (label != null) {
-                builder.append("// ");
-                builder.append(label);
+                out.format("// %s", label);
             }
-            builder.append("\n");
+            out.format("\n");
 
             if (info instanceof ConstantInfo.Long || info instanceof ConstantInfo.Double) {
                 i++;
             }
         }
-        return builder.toString();
     }
 
     private String getConstantLabel(ConstantInfo info) {
@@ -75,17 +87,14 @@ public class ClassFileDisassembler {
         } else if (info instanceof ConstantInfo.ClassRefInfo) {
             int classIndex = ((ConstantInfo.ClassRefInfo)info).getClassIndex();
             int nameAndTypeIndex = ((ConstantInfo.ClassRefInfo)info).getNameAndTypeIndex();
-            return String.format("%s.%s",
-                    utf8Constant(classConstant(classIndex).getNameIndex()).getString(),
-                    getNameAndType(nameAndTypeIndex));
+            return utf8Constant(classConstant(classIndex).getNameIndex()).getString() + "." + getNameAndType(nameAndTypeIndex);
         } else {
             return null;
         }
     }
 
-    private String disassembleMethods() {
-        StringBuilder builder = new StringBuilder();
-        builder.append("{");
+    private void disassembleMethods(Formatter out) {
+        out.format("{");
         for (MethodInfo method : classfile.getMethods()) {
             StringJoiner declaration = new StringJoiner(" ");
             method.getAccessFlags().stream().forEach(f -> declaration.add(f.getName()));
@@ -98,75 +107,77 @@ public class ClassFileDisassembler {
             StringJoiner flags = new StringJoiner(", ");
             method.getAccessFlags().stream().forEach(f -> flags.add(f.toString()));
 
-            builder.append(String.format("\n  %s(%s);\n", declaration.toString(), args.toString()));
-            builder.append(String.format("    descriptor: %s\n", method.getDescriptor().toString()));
-            builder.append(String.format("    flags: %s\n", flags.toString()));
+            out.format("\n  %s(%s);\n", declaration.toString(), args.toString());
+            out.format("    descriptor: %s\n", method.getDescriptor().toString());
+            out.format("    flags: %s\n", flags.toString());
 
             // Show "Code" first
-            builder.append(disassembleAttribute(method.getAttributes().get("Code"), method, 2));
-            for (AttributeInfo attribute : method.getAttributes().values()) {
+            Map<String, AttributeInfo> attributes = method.getAttributes();
+            disassembleAttribute(out, attributes.get("Code"), method, 2);
+            for (AttributeInfo attribute : attributes.values()) {
                 if (attribute.getName().equals("Code"))
                     continue;
-                builder.append(disassembleAttribute(attribute, method, 2));
+                disassembleAttribute(out, attribute, method, 2);
             }
         }
-        builder.append("}\n");
-        return builder.toString();
+        out.format("}\n");
     }
 
-    private String disassembleAttribute(AttributeInfo attribute, MethodInfo method, int indentLevel) {
-        IndentedString builder = new IndentedString(indentLevel);
+    private void disassembleAttribute(Formatter out, AttributeInfo attribute, MethodInfo method, int indentLevel) {
+        String indent = INDENTS[indentLevel];
         if (attribute instanceof AttributeInfo.Code) {
             if (method == null)
                 throw new RuntimeException("Code attribute is unexpected when method is null");
 
             AttributeInfo.Code codeAttribute = (AttributeInfo.Code) attribute;
             int argsSize = method.getDescriptor().getParameters().size();
-            if (!method.getAccessFlags().contains(MethodInfo.AccessFlag.ACC_STATIC))
+            if (!method.isStatic())
                 argsSize++;
 
-            builder.append(String.format("%s:\n", attribute.getName()));
-            builder.append(String.format("  stack=%d, locals=%d, args_size=%d\n", codeAttribute.getMaxStack(), codeAttribute.getMaxLocals(), argsSize));
-            for (int pos = 0; pos < codeAttribute.getInstructions().length;) {
-                Instruction instruction = codeAttribute.getInstructions()[pos];
-                builder.append(String.format("  %4d: %s\n", pos, disassembleInstruction(instruction, pos)));
-                pos += 1 + instruction.getOperands().length;
+            out.format("%s%s:\n", indent, attribute.getName());
+            out.format("%s  stack=%d, locals=%d, args_size=%d\n", indent, codeAttribute.getMaxStack(), codeAttribute.getMaxLocals(), argsSize);
+            Instruction[] instructions = codeAttribute.getInstructions();
+            for (int pos = 0; pos < instructions.length;) {
+                Instruction instruction = instructions[pos];
+                out.format("%s  %4d: ", indent, pos);
+                disassembleInstruction(out, instruction, pos);
+                out.format("\n");
+                pos += instruction.getLength();
             }
 
             if (codeAttribute.getExceptionTable().length > 0) {
-                builder.append("  Exception table:\n");
-                builder.append("     from    to  target type\n");
+                out.format("%s  Exception table:\n", indent);
+                out.format("%s     from    to  target type\n", indent);
                 for (AttributeInfo.Code.ExceptionTableEntry entry : codeAttribute.getExceptionTable()) {
                     String type = "any";
                     if (entry.getCatchType() != 0) {
                         ConstantInfo.Class klass = classConstant(entry.getCatchType());
-                        type = String.format("Class %s", utf8Constant(klass.getNameIndex()).getString());
+                        type = "Class " + utf8Constant(klass.getNameIndex()).getString();
                     }
-                    builder.append(String.format("     %5d %5d %5d   %s\n",
-                            entry.getStartPc(), entry.getEndPc(), entry.getHandlerPc(), type));
+                    out.format("%s     %5d %5d %5d   %s\n",
+                            indent, entry.getStartPc(), entry.getEndPc(), entry.getHandlerPc(), type);
                 }
             }
 
             for (AttributeInfo attr : codeAttribute.getAttributes()) {
-                builder.appendIndented(disassembleAttribute(attr, method, indentLevel + 1));
+                disassembleAttribute(out, attr, method, indentLevel + 1);
             }
         } else if (attribute instanceof AttributeInfo.LineNumberTable) {
-            builder.append(String.format("%s:\n", attribute.getName()));
+            out.format("%s%s:\n", indent, attribute.getName());
             for (AttributeInfo.LineNumberTable.LineNumberEntry entry : ((AttributeInfo.LineNumberTable) attribute).getLineNumberTable()) {
-                builder.append(String.format("  line %d: %d\n", entry.getLineNumber(), entry.getStartPc()));
+                out.format("%s  line %d: %d\n", indent, entry.getLineNumber(), entry.getStartPc());
             }
         } else if (attribute instanceof AttributeInfo.SourceFile) {
             String name = utf8Constant(((AttributeInfo.SourceFile)attribute).getIndex()).getString();
-            builder.append(String.format("%s: \"%s\"\n", attribute.getName(), name));
+            out.format("%s%s: \"%s\"\n", indent, attribute.getName(), name);
         } else if (attribute != null) { // Double/Long may leave it null
-            builder.append(String.format("%s: [TODO]\n", attribute.getName()));
+            out.format("%s%s: [TODO]\n", indent, attribute.getName());
         }
-        return builder.toString();
     }
 
-    private String disassembleInstruction(Instruction instruction, int pos) {
+    private void disassembleInstruction(Formatter out, Instruction instruction, int pos) {
         Opcode opcode = instruction.getOpcode();
-        String name = opcode.getName();
+        String name = (instruction.isWide() ? opcode.getName() + "_w" : opcode.getName()); // like javap
 
         switch (opcode) {
             case Ldc:
@@ -188,24 +199,25 @@ public class ClassFileDisassembler {
                 String label = getConstantLabel(info);
                 if (label == null)
                     label = "[TODO]";
-                return String.format("%-13s #%-19d// %s %s",
+                out.format("%-13s #%-19d// %s %s",
                         name,
                         index,
                         info.getType().toString().replaceFirst("ref\\z", ""),
                         label);
+                break;
             case Goto:
             case Ifnonnull:
-                return String.format("%-13s %d", name, pos + instruction.getIndex());
+                out.format("%-13s %d", name, pos + instruction.getIndex());
+                break;
             default:
-                return name;
+                out.format("%s", name);
+                break;
         }
     }
 
     private String getNameAndType(int index) {
         ConstantInfo.NameAndType info = (ConstantInfo.NameAndType)constant(index);
-        return String.format("%s:%s",
-                utf8Constant(info.getNameIndex()).getString(),
-                utf8Constant(info.getDescriptorIndex()).getString());
+        return utf8Constant(info.getNameIndex()).getString() + ":" + utf8Constant(info.getDescriptorIndex()).getString();
     }
 
     private ConstantInfo.Class classConstant(int index) {
@@ -217,31 +229,6 @@ public class ClassFileDisassembler {
     }
 
     private ConstantInfo constant(int index) {
-        return classfile.getConstantPool()[index - 1];
-    }
-
-    private static class IndentedString {
-        private final int indentLevel;
-        private final StringBuilder builder;
-
-        public IndentedString(int indentLevel) {
-            this.indentLevel = indentLevel;
-            this.builder = new StringBuilder();
-        }
-
-        public void append(String string) {
-            for (int i = 0; i < indentLevel; i++) {
-                builder.append("  ");
-            }
-            appendIndented(string);
-        }
-
-        public void appendIndented(String string) {
-            builder.append(string);
-        }
-
-        public String toString() {
-            return builder.toString();
-        }
+        return classfile.getConstantPool().get(index);
     }
 }
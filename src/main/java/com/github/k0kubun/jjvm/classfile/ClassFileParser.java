@@ -1,15 +1,40 @@
 package com.github.k0kubun.jjvm.classfile;
 
-import java.io.DataInputStream;
-import java.io.FileInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.Consumer;
 
 // https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-4.html
 public class ClassFileParser {
+    // How much of attributes not needed for execution is decoded on parse. Attributes not decoded
+    // on parse are decoded on their first access.
+    public enum Profile {
+        Lean, // for execution: LineNumberTable and StackMapTable are not decoded
+        Debug, // LineNumberTable is decoded for stack traces
+        Full, // everything is decoded, e.g. for disassembly
+    }
+
+    private final Profile profile;
+
+    public ClassFileParser() {
+        this(Profile.Full);
+    }
+
+    public ClassFileParser(Profile profile) {
+        this.profile = profile;
+    }
+
     // ClassFile {
     //     u4             magic;
     //     u2             minor_version;
@@ -28,15 +53,16 @@ public class ClassFileParser {
     //     u2             attributes_count;
     //     attribute_info attributes[attributes_count];
     // }
-    public ClassFile parse(InputStream inputStream) throws IOException {
-        DataInputStream stream = new DataInputStream(inputStream);
+    // Parse a classfile over a heap or memory-mapped buffer, from its position to its limit. Code bytes
+    // are not copied, so `buffer` must not be modified afterwards.
+    public ClassFile parse(ByteBuffer buffer) throws IOException {
+        BufferReader stream = new BufferReader(buffer.slice().order(ByteOrder.BIG_ENDIAN), 0);
 
         int magic = stream.readInt();
         int minorVersion = stream.readUnsignedShort();
         int majorVersion = stream.readUnsignedShort();
         int constantPoolCount = stream.readUnsignedShort();
-        ConstantInfo[] constantPool = parseConstantPool(stream, constantPoolCount - 1);
-        resolveConstantPoolReferences(constantPool);
+        ConstantPool constantPool = parseConstantPool(stream, constantPoolCount - 1);
         int accessFlags = stream.readUnsignedShort();
         int thisClass = stream.readUnsignedShort();
         int superClass = stream.readUnsignedShort();
@@ -49,7 +75,7 @@ public class ClassFileParser {
         int attributesCount = stream.readUnsignedShort();
         AttributeInfo[] attributes = parseAttributes(stream, attributesCount, constantPool);
 
-        if (stream.read() != -1) {
+        if (stream.available() != 0) {
             throw new RuntimeException(String.format("classfile did not reach EOF after parseField (available: %d)", stream.available()));
         }
 
@@ -68,177 +94,69 @@ public class ClassFileParser {
         );
     }
 
+    public ClassFile parse(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        for (int length; (length = inputStream.read(chunk)) != -1;) {
+            bytes.write(chunk, 0, length);
+        }
+        return parse(ByteBuffer.wrap(bytes.toByteArray()));
+    }
+
     public ClassFile parse(String filename) throws IOException {
-        return parse(new FileInputStream(filename));
+        return parse(ByteBuffer.wrap(Files.readAllBytes(Paths.get(filename))));
+    }
+
+    // Parse all classfiles in a jar or a directory in parallel. See ClassFileBatch.
+    public static void parseAll(File source, Consumer<ClassFileBatch.Result> consumer) throws IOException {
+        new ClassFileBatch(source).parseAll(consumer);
     }
 
     // cp_info {
     //     u1 tag;
     //     u1 info[];
     // }
-    private ConstantInfo[] parseConstantPool(DataInputStream stream, int constantPoolCount) throws IOException {
-        ConstantInfo[] constantPool = new ConstantInfo[constantPoolCount];
+    //
+    // Only offsets of entries are recorded here. ConstantPool creates entries on demand.
+    private ConstantPool parseConstantPool(BufferReader stream, int constantPoolCount) throws IOException {
+        int[] offsets = new int[constantPoolCount];
         for (int i = 0; i < constantPoolCount; i++) {
+            offsets[i] = stream.getPosition();
             int tag = stream.readUnsignedByte();
             ConstantType type = ConstantType.fromTag(tag);
 
-            ConstantInfo info;
-            if (type == ConstantType.Class) {
-                // CONSTANT_Class_info {
-                //     u1 tag;
-                //     u2 name_index;
-                // }
-                info = new ConstantInfo.Class(stream.readUnsignedShort());
-            } else if (type == ConstantType.Fieldref) {
-                // CONSTANT_Fieldref_info {
-                //     u1 tag;
-                //     u2 class_index;
-                //     u2 name_and_type_index;
-                // }
-                info = new ConstantInfo.Fieldref(stream.readUnsignedShort(), stream.readUnsignedShort());
-            } else if (type == ConstantType.Methodref) {
-                // CONSTANT_Methodref_info {
-                //     u1 tag;
-                //     u2 class_index;
-                //     u2 name_and_type_index;
-                // }
-                info = new ConstantInfo.Methodref(stream.readUnsignedShort(), stream.readUnsignedShort());
-            } else if (type == ConstantType.InterfaceMethodref) {
-                // CONSTANT_InterfaceMethodref_info {
-                //     u1 tag;
-                //     u2 class_index;
-                //     u2 name_and_type_index;
-                // }
-                info = new ConstantInfo.InterfaceMethodref(stream.readUnsignedShort(), stream.readUnsignedShort());
-            } else if (type == ConstantType.String) {
-                // CONSTANT_String_info {
-                //     u1 tag;
-                //     u2 string_index;
-                // }
-                info = new ConstantInfo.String(stream.readUnsignedShort());
-            } else if (type == ConstantType.Integer) {
-                // CONSTANT_Integer_info {
-                //     u1 tag;
-                //     u4 bytes;
-                // }
-                info = new ConstantInfo.Integer(stream.readInt());
-            } else if (type == ConstantType.Float) {
-                // CONSTANT_Float_info {
-                //     u1 tag;
-                //     u4 bytes;
-                // }
-                byte[] bytes = new byte[4];
-                for (int j = 0; j < 4; j++) {
-                    bytes[j] = stream.readByte();
-                }
-                info = new ConstantInfo.Float(bytes);
-            } else if (type == ConstantType.Long) {
-                // CONSTANT_Long_info {
-                //     u1 tag;
-                //     u4 high_bytes;
-                //     u4 low_bytes;
-                // }
-                info = new ConstantInfo.Long(stream.readLong());
-            } else if (type == ConstantType.Double) {
-                // CONSTANT_Double_info {
-                //     u1 tag;
-                //     u4 high_bytes;
-                //     u4 low_bytes;
-                // }
-                byte[] bytes = new byte[8];
-                for (int j = 0; j < 8; j++) {
-                    bytes[j] = stream.readByte();
-                }
-                info = new ConstantInfo.Double(bytes);
-            } else if (type == ConstantType.NameAndType) {
-                // CONSTANT_NameAndType_info {
-                //     u1 tag;
-                //     u2 name_index;
-                //     u2 descriptor_index;
-                // }
-                info = new ConstantInfo.NameAndType(stream.readUnsignedShort(), stream.readUnsignedShort());
-            } else if (type == ConstantType.Utf8) {
-                // CONSTANT_Utf8_info {
-                //     u1 tag;
-                //     u2 length;
-                //     u1 bytes[length];
-                // }
-                byte[] bytes = new byte[stream.readUnsignedShort()];
-                stream.read(bytes);
-                info = new ConstantInfo.Utf8(bytes);
-            } else if (type == ConstantType.MethodHandle) {
-                // CONSTANT_MethodHandle_info {
-                //     u1 tag;
-                //     u1 reference_kind;
-                //     u2 reference_index;
-                // }
-                info = new ConstantInfo.MethodHandle(stream.readUnsignedByte(), stream.readUnsignedShort());
-            } else if (type == ConstantType.MethodType) {
-                // CONSTANT_MethodType_info {
-                //     u1 tag;
-                //     u2 descriptor_index;
-                // }
-                info = new ConstantInfo.MethodType(stream.readUnsignedShort());
-            } else if (type == ConstantType.InvokeDynamic) {
-                // CONSTANT_InvokeDynamic_info {
-                //     u1 tag;
-                //     u2 bootstrap_method_attr_index;
-                //     u2 name_and_type_index;
-                // }
-                info = new ConstantInfo.InvokeDynamic(stream.readUnsignedShort(), stream.readUnsignedShort());
-            } else {
-                throw new UnsupportedOperationException(String.format("Unhandled ConstantType (tag:%d)", tag));
-            }
-            constantPool[i] = info;
-
-            if (type == ConstantType.Long || type == ConstantType.Double) {
-                // All 8-byte constants take up two entries in the constant_pool table of the class file.
-                i++;
-            }
-        }
-        return constantPool;
-    }
-
-    // Resolve reference to constantPool by index in constants
-    private void resolveConstantPoolReferences(ConstantInfo[] constantPool) {
-        for (ConstantInfo constant : constantPool) {
-            if (constant instanceof ConstantInfo.Class) {
-                ConstantInfo.Class info = (ConstantInfo.Class)constant;
-                info.setName(((ConstantInfo.Utf8)constantPool[info.getNameIndex() - 1]).getString());
-            } else if (constant instanceof ConstantInfo.Fieldref) {
-                ConstantInfo.Fieldref info = (ConstantInfo.Fieldref)constant;
-                info.setClassInfo((ConstantInfo.Class)constantPool[info.getClassIndex() - 1]);
-                info.setNameAndType((ConstantInfo.NameAndType)constantPool[info.getNameAndTypeIndex() - 1]);
-            } else if (constant instanceof ConstantInfo.Methodref) {
-                ConstantInfo.Methodref info = (ConstantInfo.Methodref)constant;
-                info.setClassInfo((ConstantInfo.Class)constantPool[info.getClassIndex() - 1]);
-                info.setNameAndType((ConstantInfo.NameAndType)constantPool[info.getNameAndTypeIndex() - 1]);
-            } else if (constant instanceof ConstantInfo.InterfaceMethodref) {
-                ConstantInfo.InterfaceMethodref info = (ConstantInfo.InterfaceMethodref)constant;
-                info.setClassInfo((ConstantInfo.Class)constantPool[info.getClassIndex() - 1]);
-                info.setNameAndType((ConstantInfo.NameAndType)constantPool[info.getNameAndTypeIndex() - 1]);
-            } else if (constant instanceof ConstantInfo.String) {
-                ConstantInfo.String info = (ConstantInfo.String)constant;
-                info.setString(((ConstantInfo.Utf8)constantPool[info.getStringIndex() - 1]).getString());
-            } else if (constant instanceof ConstantInfo.Integer
-                    || constant instanceof ConstantInfo.Float
-                    || constant instanceof ConstantInfo.Long
-                    || constant instanceof ConstantInfo.Double) {
-                // not needed
-            } else if (constant instanceof ConstantInfo.NameAndType) {
-                ConstantInfo.NameAndType info = (ConstantInfo.NameAndType)constant;
-                info.setName(((ConstantInfo.Utf8)constantPool[info.getNameIndex() - 1]).getString());
-                info.setDescriptor(((ConstantInfo.Utf8)constantPool[info.getDescriptorIndex() - 1]).getString());
-            } else if (constant instanceof ConstantInfo.Utf8) {
-                // not needed
-            } else if (constant instanceof ConstantInfo.MethodHandle
-                    || constant instanceof ConstantInfo.MethodType
-                    || constant instanceof ConstantInfo.InvokeDynamic) {
-                // not used yet
-            } else if (constant != null) { // Long/Double may leave create a blank space
-                throw new UnsupportedOperationException("Unhandled ConstantType: " + constant);
+            switch (type) {
+                case Class: // u2 name_index
+                case String: // u2 string_index
+                case MethodType: // u2 descriptor_index
+                    stream.skipBytes(2);
+                    break;
+                case MethodHandle: // u1 reference_kind, u2 reference_index
+                    stream.skipBytes(3);
+                    break;
+                case Fieldref: // u2 class_index, u2 name_and_type_index
+                case Methodref:
+                case InterfaceMethodref:
+                case NameAndType: // u2 name_index, u2 descriptor_index
+                case InvokeDynamic: // u2 bootstrap_method_attr_index, u2 name_and_type_index
+                case Integer: // u4 bytes
+                case Float:
+                    stream.skipBytes(4);
+                    break;
+                case Long: // u4 high_bytes, u4 low_bytes
+                case Double:
+                    stream.skipBytes(8);
+                    // All 8-byte constants take up two entries in the constant_pool table of the class file.
+                    i++;
+                    break;
+                case Utf8: // u2 length, u1 bytes[length]
+                    stream.skipBytes(stream.readUnsignedShort());
+                    break;
+                default:
+                    throw new UnsupportedOperationException(String.format("Unhandled ConstantType (tag:%d)", tag));
             }
         }
+        return new ConstantPool(stream.getBuffer(), offsets);
     }
 
     // field_info {
@@ -248,7 +166,7 @@ public class ClassFileParser {
     //     u2             attributes_count;
     //     attribute_info attributes[attributes_count];
     // }
-    private FieldInfo[] parseFields(DataInputStream stream, int fieldsCount, ConstantInfo[] constantPool) throws IOException {
+    private FieldInfo[] parseFields(BufferReader stream, int fieldsCount, ConstantPool constantPool) throws IOException {
         FieldInfo[] fields = new FieldInfo[fieldsCount];
         for (int i = 0; i < fieldsCount; i++) {
             int accessFlags = stream.readUnsignedShort();
@@ -268,20 +186,16 @@ public class ClassFileParser {
     //     u2             attributes_count;
     //     attribute_info attributes[attributes_count];
     // }
-    private MethodInfo[] parseMethods(DataInputStream stream, int methodsCount, ConstantInfo[] constantPool) throws IOException {
+    private MethodInfo[] parseMethods(BufferReader stream, int methodsCount, ConstantPool constantPool) throws IOException {
         MethodInfo[] methods = new MethodInfo[methodsCount];
         for (int i = 0; i < methodsCount; i++) {
             int accessFlags = stream.readUnsignedShort();
             int nameIndex = stream.readUnsignedShort();
             int descriptorIndex = stream.readUnsignedShort();
             int attributesCount = stream.readUnsignedShort();
-            String name = ((ConstantInfo.Utf8)constantPool[nameIndex - 1]).getString();
             AttributeInfo[] attributes = parseAttributes(stream, attributesCount, constantPool);
             MethodInfo.Descriptor descriptor = DescriptorParser.parseMethod(getString(constantPool, descriptorIndex));
             methods[i] = new MethodInfo(accessFlags, getString(constantPool, nameIndex), descriptor, attributes);
-            if (name == null) {
-                throw new RuntimeException(name);
-            }
         }
         return methods;
     }
@@ -291,7 +205,7 @@ public class ClassFileParser {
     //     u4 attribute_length;
     //     u1 info[attribute_length];
     // }
-    private AttributeInfo[] parseAttributes(DataInputStream stream, int attributesCount, ConstantInfo[] constantPool) throws IOException {
+    private AttributeInfo[] parseAttributes(BufferReader stream, int attributesCount, ConstantPool constantPool) throws IOException {
         AttributeInfo[] attributes = new AttributeInfo[attributesCount];
         for (int j = 0; j < attributesCount; j++) {
             int attributeNameIndex = stream.readUnsignedShort();
@@ -299,11 +213,11 @@ public class ClassFileParser {
 
             String attributeName = getString(constantPool, attributeNameIndex);
             if (attributeName.equals("Code")) {
-                attributes[j] = parseCodeAttribute(stream, constantPool);
+                attributes[j] = parseCodeAttribute(stream, attributeLength, constantPool);
             } else if (attributeName.equals("LineNumberTable")) {
-                attributes[j] = parseLineNumberTableAttribute(stream);
+                attributes[j] = parseLineNumberTableAttribute(stream, attributeLength);
             } else if (attributeName.equals("StackMapTable")) {
-                attributes[j] = parseStackMapTableAttribute(stream);
+                attributes[j] = parseStackMapTableAttribute(stream, attributeLength);
             } else if (attributeName.equals("SourceFile")) {
                 attributes[j] = parseSourceFileAttribute(stream);
             } else if (attributeName.equals("ConstantValue")) {
@@ -332,93 +246,86 @@ public class ClassFileParser {
     //     u2 attributes_count;
     //     attribute_info attributes[attributes_count];
     // }
-    private AttributeInfo.Code parseCodeAttribute(DataInputStream stream, ConstantInfo[] constantPool) throws IOException {
-        int maxStack = stream.readUnsignedShort();
-        int maxLocals = stream.readUnsignedShort();
-        Instruction[] code = parseCode(stream, stream.readInt());
-
-        int exceptionTableLength = stream.readUnsignedShort();
-        AttributeInfo.Code.ExceptionTableEntry[] exceptionTable = new AttributeInfo.Code.ExceptionTableEntry[exceptionTableLength];
-        for (int i = 0; i < exceptionTableLength; i++) {
-            int startPc = stream.readUnsignedShort();
-            int endPc = stream.readUnsignedShort();
-            int handlerPc = stream.readUnsignedShort();
-            int catchType = stream.readUnsignedShort();
-            exceptionTable[i] = new AttributeInfo.Code.ExceptionTableEntry(startPc, endPc, handlerPc, catchType);
-        }
+    private AttributeInfo.Code parseCodeAttribute(BufferReader stream, int attributeLength, ConstantPool constantPool) throws IOException {
+        AttributeInfo.Code code = new AttributeInfo.Code(this, stream.getBuffer(), stream.getPosition(), constantPool);
+        stream.skipBytes(attributeLength);
+        return code;
+    }
 
-        int attributesCount = stream.readUnsignedShort();
-        AttributeInfo[] attributes = parseAttributes(stream, attributesCount, constantPool);
+    // Decode the rest of Code_attribute from max_stack at `offset`. Called by AttributeInfo.Code lazily.
+    AttributeInfo.Code.Body decodeCode(ByteBuffer buffer, int offset, ConstantPool constantPool) {
+        BufferReader stream = new BufferReader(buffer, offset + 4); // skip max_stack and max_locals
+        try {
+            Instruction[] code = parseCode(stream, stream.readInt());
+
+            int exceptionTableLength = stream.readUnsignedShort();
+            AttributeInfo.Code.ExceptionTableEntry[] exceptionTable = new AttributeInfo.Code.ExceptionTableEntry[exceptionTableLength];
+            for (int i = 0; i < exceptionTableLength; i++) {
+                int startPc = stream.readUnsignedShort();
+                int endPc = stream.readUnsignedShort();
+                int handlerPc = stream.readUnsignedShort();
+                int catchType = stream.readUnsignedShort();
+                exceptionTable[i] = new AttributeInfo.Code.ExceptionTableEntry(startPc, endPc, handlerPc, catchType);
+            }
+
+            int attributesCount = stream.readUnsignedShort();
+            AttributeInfo[] attributes = parseAttributes(stream, attributesCount, constantPool);
 
-        return new AttributeInfo.Code(maxStack, maxLocals, code, exceptionTable, attributes);
+            return new AttributeInfo.Code.Body(code, exceptionTable, attributes);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to decode Code attribute: " + e.toString());
+        }
     }
 
-    private Instruction[] parseCode(DataInputStream inputStream, int codeLength) throws IOException {
-        CountedInputStream stream = new CountedInputStream(inputStream);
+    private Instruction[] parseCode(BufferReader stream, int codeLength) throws IOException {
+        ByteBuffer buffer = stream.getBuffer();
+        int codeOffset = stream.getPosition();
         Instruction[] instructions = new Instruction[codeLength];
         for (int i = 0; i < codeLength;) {
-            byte code = (byte)stream.readUnsignedByte();
+            byte code = buffer.get(codeOffset + i);
             Instruction.Opcode opcode = Instruction.Opcode.fromCode(code);
+            int operandsOffset = codeOffset + i + 1;
+
+            if (opcode == Instruction.Opcode.Wide) {
+                Instruction.Opcode widened = Instruction.Opcode.fromCode(buffer.get(operandsOffset));
+                int operandsLength = (widened == Instruction.Opcode.Iinc ? 4 : 2);
+                instructions[i] = new Instruction(widened, buffer, operandsOffset + 1, operandsLength, 0, true);
+                i += 2 + operandsLength;
+                continue;
+            }
 
-            byte[] operands;
+            int operandsLength;
             int argc = opcode.getArgc();
             int padSize = 0;
             if (argc == -1) { // variable-length
-                int mod4 = stream.getCounter() % 4;
+                int mod4 = (i + 1) % 4;
                 padSize = (mod4 == 0 ? 0 : 4 - mod4);
-                byte[] pad = new byte[padSize];
-                byte[] defaultByte = new byte[4];
-                stream.read(pad);
-                stream.read(defaultByte);
+                int argsOffset = operandsOffset + padSize; // default, then low/high or npairs
 
                 switch (opcode) {
                     case Tableswitch:
-                        byte[] low = new byte[4];
-                        byte[] high = new byte[4];
-                        stream.read(low);
-                        stream.read(high);
-                        byte[] jumpOffsets = new byte[4 * (ByteBuffer.wrap(high).getInt() - ByteBuffer.wrap(low).getInt() + 1)];
-                        stream.read(jumpOffsets);
-
-                        operands = concatByteArrays(pad, defaultByte, low, high, jumpOffsets);
+                        int low = buffer.getInt(argsOffset + 4);
+                        int high = buffer.getInt(argsOffset + 8);
+                        operandsLength = padSize + 12 + 4 * (high - low + 1);
                         break;
                     case Lookupswitch:
-                        byte[] nPairs = new byte[4];
-                        stream.read(nPairs);
-                        byte[] pairs = new byte[8 * ByteBuffer.wrap(nPairs).getInt()];
-                        stream.read(pairs);
-
-                        operands = concatByteArrays(pad, defaultByte, nPairs, pairs);
+                        int nPairs = buffer.getInt(argsOffset + 4);
+                        operandsLength = padSize + 8 + 8 * nPairs;
                         break;
                     default:
                         throw new RuntimeException("unexpected variable-length opcode: " + opcode.getName());
                 }
             } else {
-                operands = new byte[argc];
-                for (int j = 0; j < argc; j++) {
-                    operands[j] = (byte)stream.readUnsignedByte();
-                }
+                operandsLength = argc;
             }
 
-            instructions[i] = new Instruction(opcode, operands, padSize);
-            i += 1 + operands.length;
+            instructions[i] = new Instruction(opcode, buffer, operandsOffset, operandsLength, padSize);
+            i += 1 + operandsLength;
         }
+        stream.skipBytes(codeLength);
         return instructions;
     }
 
-    private byte[] concatByteArrays(byte[]... arrays) {
-        int length = 0;
-        for (byte[] array : arrays) {
-            length += array.length;
-        }
-
-        ByteBuffer buffer = ByteBuffer.allocate(length);
-        for (byte[] array : arrays) {
-            buffer.put(array);
-        }
-        return buffer.array();
-    }
-
     // LineNumberTable_attribute {
     //     u2 attribute_name_index;
     //     u4 attribute_length;
@@ -427,7 +334,25 @@ public class ClassFileParser {
     //         u2 line_number;
     //     } line_number_table[line_number_table_length];
     // }
-    private AttributeInfo.LineNumberTable parseLineNumberTableAttribute(DataInputStream stream) throws IOException {
+    private AttributeInfo.LineNumberTable parseLineNumberTableAttribute(BufferReader stream, int attributeLength) throws IOException {
+        if (profile == Profile.Lean) {
+            AttributeInfo.LineNumberTable attribute = new AttributeInfo.LineNumberTable(this, stream.getBuffer(), stream.getPosition());
+            stream.skipBytes(attributeLength);
+            return attribute;
+        }
+        return new AttributeInfo.LineNumberTable(parseLineNumberTable(stream));
+    }
+
+    // Called by AttributeInfo.LineNumberTable lazily
+    AttributeInfo.LineNumberTable.LineNumberEntry[] decodeLineNumberTable(ByteBuffer buffer, int offset) {
+        try {
+            return parseLineNumberTable(new BufferReader(buffer, offset));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to decode LineNumberTable attribute: " + e.toString());
+        }
+    }
+
+    private AttributeInfo.LineNumberTable.LineNumberEntry[] parseLineNumberTable(BufferReader stream) throws IOException {
         int tableLength = stream.readUnsignedShort();
         AttributeInfo.LineNumberTable.LineNumberEntry[] table = new AttributeInfo.LineNumberTable.LineNumberEntry[tableLength];
 
@@ -436,7 +361,7 @@ public class ClassFileParser {
             int lineNumber = stream.readUnsignedShort();
             table[i] = new AttributeInfo.LineNumberTable.LineNumberEntry(startPc, lineNumber);
         }
-        return new AttributeInfo.LineNumberTable(table);
+        return table;
     }
 
     // StackMapTable_attribute {
@@ -445,7 +370,25 @@ public class ClassFileParser {
     //     u2              number_of_entries;
     //     stack_map_frame entries[number_of_entries];
     // }
-    private AttributeInfo.StackMapTable parseStackMapTableAttribute(DataInputStream stream) throws IOException {
+    private AttributeInfo.StackMapTable parseStackMapTableAttribute(BufferReader stream, int attributeLength) throws IOException {
+        if (profile != Profile.Full) {
+            AttributeInfo.StackMapTable attribute = new AttributeInfo.StackMapTable(this, stream.getBuffer(), stream.getPosition());
+            stream.skipBytes(attributeLength);
+            return attribute;
+        }
+        return new AttributeInfo.StackMapTable(parseStackMapTable(stream));
+    }
+
+    // Called by AttributeInfo.StackMapTable lazily
+    AttributeInfo.StackMapTable.StackMapFrame[] decodeStackMapTable(ByteBuffer buffer, int offset) {
+        try {
+            return parseStackMapTable(new BufferReader(buffer, offset));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to decode StackMapTable attribute: " + e.toString());
+        }
+    }
+
+    private AttributeInfo.StackMapTable.StackMapFrame[] parseStackMapTable(BufferReader stream) throws IOException {
         int numberOfEntries = stream.readUnsignedShort();
         AttributeInfo.StackMapTable.StackMapFrame[] entries = new AttributeInfo.StackMapTable.StackMapFrame[numberOfEntries];
         for (int i = 0; i < numberOfEntries; i++) {
@@ -513,10 +456,10 @@ public class ClassFileParser {
                 throw new RuntimeException("Unexpected tag for StackMapFrame: " + tag);
             }
         }
-        return new AttributeInfo.StackMapTable(entries);
+        return entries;
     }
 
-    private AttributeInfo.StackMapTable.VerificationTypeInfo[] parseVerificationTypeInfo(DataInputStream stream, int n) throws IOException {
+    private AttributeInfo.StackMapTable.VerificationTypeInfo[] parseVerificationTypeInfo(BufferReader stream, int n) throws IOException {
         AttributeInfo.StackMapTable.VerificationTypeInfo[] infos = new AttributeInfo.StackMapTable.VerificationTypeInfo[n];
         for (int i = 0; i < n; i++) {
             int tag = stream.readUnsignedByte();
@@ -536,7 +479,7 @@ public class ClassFileParser {
     //     u4 attribute_length;
     //     u2 sourcefile_index;
     // }
-    private AttributeInfo.SourceFile parseSourceFileAttribute(DataInputStream stream) throws IOException {
+    private AttributeInfo.SourceFile parseSourceFileAttribute(BufferReader stream) throws IOException {
         int index = stream.readUnsignedShort();
         return new AttributeInfo.SourceFile(index);
     }
@@ -546,12 +489,12 @@ public class ClassFileParser {
     //     u4 attribute_length;
     //     u2 constantvalue_index;
     // }
-    private AttributeInfo.ConstantValue parseConstantValueAttribute(DataInputStream stream, ConstantInfo[] constantPool) throws IOException {
+    private AttributeInfo.ConstantValue parseConstantValueAttribute(BufferReader stream, ConstantPool constantPool) throws IOException {
         int index = stream.readUnsignedShort();
-        return new AttributeInfo.ConstantValue(constantPool[index - 1]);
+        return new AttributeInfo.ConstantValue(constantPool.get(index));
     }
 
-    private int[] readUnsignedShorts(DataInputStream stream, int length) throws IOException {
+    private int[] readUnsignedShorts(BufferReader stream, int length) throws IOException {
         int[] shorts = new int[length];
         for (int i = 0; i < length; i++) {
             shorts[i] = stream.readUnsignedShort();
@@ -559,11 +502,15 @@ public class ClassFileParser {
         return shorts;
     }
 
-    private String getString(ConstantInfo[] constantPool, int index) {
-        return ((ConstantInfo.Utf8)constantPool[index - 1]).getString();
+    private String getString(ConstantPool constantPool, int index) {
+        return constantPool.getString(index);
     }
 
     public static class DescriptorParser {
+        // Shared by all classes and threads. Descriptors are few compared to their uses. Like SymbolTable,
+        // entries are weak, and a Descriptor holding its raw string is referenced by a WeakReference.
+        private static final Map<String, WeakReference<MethodInfo.Descriptor>> methodDescriptors = new WeakHashMap<>();
+
         // MethodDescriptor:
         //   ( {ParameterDescriptor} ) ReturnDescriptor
         //
@@ -577,6 +524,18 @@ public class ClassFileParser {
         // VoidDescriptor:
         //   V
         public static MethodInfo.Descriptor parseMethod(String descriptor) {
+            synchronized (methodDescriptors) {
+                WeakReference<MethodInfo.Descriptor> reference = methodDescriptors.get(descriptor);
+                MethodInfo.Descriptor interned = (reference == null ? null : reference.get());
+                if (interned == null) {
+                    interned = scanMethod(descriptor);
+                    methodDescriptors.put(descriptor, new WeakReference<>(interned));
+                }
+                return interned;
+            }
+        }
+
+        private static MethodInfo.Descriptor scanMethod(String descriptor) {
             StringScanner scanner = new StringScanner(descriptor);
             if (scanner.nextChar() != '(') {
                 throw new RuntimeException(String.format("method descriptor should start with '(', but was: %s", descriptor));
@@ -643,7 +602,7 @@ public class ClassFileParser {
                     return FieldType.BOOLEAN;
                 case 'L':
                     String className = scanner.scanUntil(';');
-                    return new FieldType.ObjectType(className.substring(0, className.length() - 1));
+                    return new FieldType.ObjectType(SymbolTable.intern(className.substring(0, className.length() - 1)));
                 case '[':
                     return new FieldType.ArrayType(scanFieldType(scanner));
                 default:
@@ -679,28 +638,49 @@ public class ClassFileParser {
         }
     }
 
-    // A wrapper of DataInputStream that allows to count how many bytes are read.
-    private static class CountedInputStream {
-        private final DataInputStream stream;
-        private int counter;
+    // A cursor over a classfile buffer, which reads by absolute offsets.
+    private static class BufferReader {
+        private final ByteBuffer buffer;
+        private int position;
+
+        BufferReader(ByteBuffer buffer, int position) {
+            this.buffer = buffer;
+            this.position = position;
+        }
+
+        public ByteBuffer getBuffer() {
+            return buffer;
+        }
+
+        public int getPosition() {
+            return position;
+        }
 
-        CountedInputStream(DataInputStream in) {
-            stream = in;
-            counter = 0;
+        public int available() {
+            return buffer.limit() - position;
         }
 
-        public int getCounter() {
-            return counter;
+        public int readUnsignedByte() {
+            return buffer.get(position++) & 0xff;
         }
 
-        public int readUnsignedByte() throws IOException {
-            counter++;
-            return stream.readUnsignedByte();
+        public int readUnsignedShort() {
+            int value = buffer.getShort(position) & 0xffff;
+            position += 2;
+            return value;
         }
 
-        public void read(byte[] buf) throws IOException {
-            counter += buf.length;
-            stream.read(buf);
+        public int readInt() {
+            int value = buffer.getInt(position);
+            position += 4;
+            return value;
+        }
+
+        public void skipBytes(int length) throws IOException {
+            if (length > available()) {
+                throw new IOException("classfile is truncated");
+            }
+            position += length;
         }
     }
 }
@@ -1,7 +1,6 @@
 package com.github.k0kubun.jjvm.classfile;
 
 import java.nio.ByteBuffer;
-import java.nio.charset.StandardCharsets;
 
 public class ConstantInfo {
     private final ConstantType type;
@@ -24,20 +23,17 @@ public class ConstantInfo {
     }
 
     public static class Class extends ConstantInfo {
+        private final ConstantPool constantPool;
         private final int descriptorIndex;
-        private java.lang.String name;
 
-        Class(int descriptorIndex) {
+        Class(ConstantPool constantPool, int descriptorIndex) {
             super(ConstantType.Class);
+            this.constantPool = constantPool;
             this.descriptorIndex = descriptorIndex;
         }
 
         public java.lang.String getName() {
-            return name;
-        }
-
-        void setName(java.lang.String name) {
-            this.name = name;
+            return constantPool.getString(descriptorIndex);
         }
 
         int getNameIndex() {
@@ -46,136 +42,109 @@ public class ConstantInfo {
     }
 
     public static class Fieldref extends ConstantInfo {
+        private final ConstantPool constantPool;
         private final int classIndex;
         private final int nameAndTypeIndex;
-        private ConstantInfo.Class classInfo;
-        private ConstantInfo.NameAndType nameAndType;
 
-        Fieldref(int classIndex, int nameAndTypeIndex) {
+        Fieldref(ConstantPool constantPool, int classIndex, int nameAndTypeIndex) {
             super(ConstantType.Fieldref);
+            this.constantPool = constantPool;
             this.classIndex = classIndex;
             this.nameAndTypeIndex = nameAndTypeIndex;
         }
 
         public ConstantInfo.Class getClassInfo() {
-            return classInfo;
+            return (ConstantInfo.Class)constantPool.get(classIndex);
         }
 
         public ConstantInfo.NameAndType getNameAndType() {
-            return nameAndType;
+            return (ConstantInfo.NameAndType)constantPool.get(nameAndTypeIndex);
         }
 
         int getClassIndex() {
             return classIndex;
         }
 
-        void setClassInfo(ConstantInfo.Class classInfo) {
-            this.classInfo = classInfo;
-        }
-
         int getNameAndTypeIndex() {
             return nameAndTypeIndex;
         }
-
-        void setNameAndType(ConstantInfo.NameAndType nameAndType) {
-            this.nameAndType = nameAndType;
-        }
     }
 
     public static class Methodref extends ConstantInfo {
+        private final ConstantPool constantPool;
         private final int classIndex;
         private final int nameAndTypeIndex;
-        private ConstantInfo.Class classInfo;
-        private ConstantInfo.NameAndType nameAndType;
 
-        Methodref(int classIndex, int nameAndTypeIndex) {
+        Methodref(ConstantPool constantPool, int classIndex, int nameAndTypeIndex) {
             super(ConstantType.Methodref);
+            this.constantPool = constantPool;
             this.classIndex = classIndex;
             this.nameAndTypeIndex = nameAndTypeIndex;
         }
 
         public ConstantInfo.Class getClassInfo() {
-            return classInfo;
+            return (ConstantInfo.Class)constantPool.get(classIndex);
         }
 
         public ConstantInfo.NameAndType getNameAndType() {
-            return nameAndType;
+            return (ConstantInfo.NameAndType)constantPool.get(nameAndTypeIndex);
         }
 
         int getClassIndex() {
             return classIndex;
         }
 
-        void setClassInfo(ConstantInfo.Class classInfo) {
-            this.classInfo = classInfo;
-        }
-
         int getNameAndTypeIndex() {
             return nameAndTypeIndex;
         }
-
-        void setNameAndType(ConstantInfo.NameAndType nameAndType) {
-            this.nameAndType = nameAndType;
-        }
     }
 
     public static class InterfaceMethodref extends ConstantInfo {
+        private final ConstantPool constantPool;
         private final int classIndex;
         private final int nameAndTypeIndex;
-        private ConstantInfo.Class classInfo;
-        private ConstantInfo.NameAndType nameAndType;
 
-        InterfaceMethodref(int classIndex, int nameAndTypeIndex) {
+        InterfaceMethodref(ConstantPool constantPool, int classIndex, int nameAndTypeIndex) {
             super(ConstantType.Methodref);
+            this.constantPool = constantPool;
             this.classIndex = classIndex;
             this.nameAndTypeIndex = nameAndTypeIndex;
         }
 
         public ConstantInfo.Class getClassInfo() {
-            return classInfo;
+            return (ConstantInfo.Class)constantPool.get(classIndex);
         }
 
         public ConstantInfo.NameAndType getNameAndType() {
-            return nameAndType;
+            return (ConstantInfo.NameAndType)constantPool.get(nameAndTypeIndex);
         }
 
         int getClassIndex() {
             return classIndex;
         }
 
-        void setClassInfo(ConstantInfo.Class classInfo) {
-            this.classInfo = classInfo;
-        }
-
         int getNameAndTypeIndex() {
             return nameAndTypeIndex;
         }
-
-        void setNameAndType(ConstantInfo.NameAndType nameAndType) {
-            this.nameAndType = nameAndType;
-        }
     }
 
     public static class String extends ConstantInfo {
+        private final ConstantPool constantPool;
         private final int stringIndex;
-        private java.lang.String string;
 
-        String(int stringIndex) {
+        String(ConstantPool constantPool, int stringIndex) {
             super(ConstantType.String);
+            this.constantPool = constantPool;
             this.stringIndex = stringIndex;
         }
 
         public java.lang.String getString() {
-            return string;
+            return constantPool.getString(stringIndex);
         }
 
         int getStringIndex() {
             return stringIndex;
         }
-
-        void setString(java.lang.String string) {
-            this.string = string;
-        }
     }
 
     public static class Integer extends ConstantInfo {
@@ -194,9 +163,9 @@ public class ConstantInfo {
     public static class Float extends ConstantInfo {
         private final float value;
 
-        Float(byte[] bytes) {
+        Float(float value) {
             super(ConstantType.Float);
-            this.value = ByteBuffer.wrap(bytes).getFloat();
+            this.value = value;
         }
 
         public float getValue() {
@@ -220,9 +189,9 @@ public class ConstantInfo {
     public static class Double extends ConstantInfo {
         private final double value;
 
-        Double(byte[] bytes) {
+        Double(double value) {
             super(ConstantType.Double);
-            this.value = ByteBuffer.wrap(bytes).getDouble();
+            this.value = value;
         }
 
         public double getValue() {
@@ -231,52 +200,88 @@ public class ConstantInfo {
     }
 
     public static class NameAndType extends ConstantInfo {
+        private final ConstantPool constantPool;
         private final int nameIndex;
         private final int descriptorIndex;
-        private java.lang.String name;
-        private java.lang.String descriptor;
+        private MethodInfo.Descriptor methodDescriptor; // interned, so racing threads store the same one
+        private FieldType fieldDescriptor; // racing threads store equivalent ones
 
-        NameAndType(int nameIndex, int descriptorIndex) {
+        NameAndType(ConstantPool constantPool, int nameIndex, int descriptorIndex) {
             super(ConstantType.NameAndType);
+            this.constantPool = constantPool;
             this.nameIndex = nameIndex;
             this.descriptorIndex = descriptorIndex;
         }
 
         public java.lang.String getName() {
-            return name;
+            return constantPool.getString(nameIndex);
         }
 
         public MethodInfo.Descriptor getMethodDescriptor() {
-            return ClassFileParser.DescriptorParser.parseMethod(descriptor);
+            if (methodDescriptor == null) {
+                methodDescriptor = ClassFileParser.DescriptorParser.parseMethod(constantPool.getString(descriptorIndex));
+            }
+            return methodDescriptor;
         }
 
-        int getNameIndex() {
-            return nameIndex;
+        public FieldType getFieldDescriptor() {
+            if (fieldDescriptor == null) {
+                fieldDescriptor = ClassFileParser.DescriptorParser.parseField(constantPool.getString(descriptorIndex));
+            }
+            return fieldDescriptor;
         }
 
-        void setName(java.lang.String name) {
-            this.name = name;
+        int getNameIndex() {
+            return nameIndex;
         }
 
         int getDescriptorIndex() {
             return descriptorIndex;
         }
-
-        void setDescriptor(java.lang.String descriptor) {
-            this.descriptor = descriptor;
-        }
     }
 
+    // Decoded from modified UTF-8 on the first getString(), and then cached.
+    // https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-4.html#jvms-4.4.7
     public static class Utf8 extends ConstantInfo {
-        private final byte[] bytes;
+        private final ByteBuffer buffer;
+        private final int offset;
+        private final int length;
+        private java.lang.String string; // a symbol of SymbolTable
 
-        Utf8(byte[] bytes) {
+        Utf8(ByteBuffer buffer, int offset, int length) {
             super(ConstantType.Utf8);
-            this.bytes = bytes;
+            this.buffer = buffer;
+            this.offset = offset;
+            this.length = length;
         }
 
         public java.lang.String getString() {
-            return new java.lang.String(bytes, StandardCharsets.UTF_8);
+            java.lang.String result = string;
+            if (result == null) {
+                result = SymbolTable.intern(decode());
+                string = result;
+            }
+            return result;
+        }
+
+        private java.lang.String decode() {
+            char[] chars = new char[length];
+            int count = 0;
+            int end = offset + length;
+            for (int i = offset; i < end;) {
+                int b = buffer.get(i) & 0xff;
+                if (b < 0x80) {
+                    chars[count++] = (char)b;
+                    i++;
+                } else if ((b & 0xe0) == 0xc0) {
+                    chars[count++] = (char)(((b & 0x1f) << 6) | (buffer.get(i + 1) & 0x3f));
+                    i += 2;
+                } else {
+                    chars[count++] = (char)(((b & 0x0f) << 12) | ((buffer.get(i + 1) & 0x3f) << 6) | (buffer.get(i + 2) & 0x3f));
+                    i += 3;
+                }
+            }
+            return new java.lang.String(chars, 0, count);
         }
     }
 
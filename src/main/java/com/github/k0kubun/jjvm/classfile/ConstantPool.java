@@ -0,0 +1,84 @@
+package com.github.k0kubun.jjvm.classfile;
+
+import java.nio.ByteBuffer;
+
+// constant_pool of a classfile, which is kept as offsets to the classfile buffer. Each entry is created
+// on first access, and references to other entries and Utf8 strings are resolved on first access of
+// them too. Entries may be created twice by racing threads, but either result is equivalent.
+public class ConstantPool {
+    private final ByteBuffer buffer;
+    private final int[] offsets; // of each cp_info, 0 for the unusable slot after Long and Double
+    private final ConstantInfo[] entries;
+
+    ConstantPool(ByteBuffer buffer, int[] offsets) {
+        this.buffer = buffer;
+        this.offsets = offsets;
+        this.entries = new ConstantInfo[offsets.length];
+    }
+
+    // constant_pool_count - 1. Valid indexes are from 1 to this.
+    public int getCount() {
+        return offsets.length;
+    }
+
+    // Returns null for the slot after Long and Double.
+    public ConstantInfo get(int index) {
+        ConstantInfo entry = entries[index - 1];
+        if (entry == null && offsets[index - 1] != 0) {
+            entry = createEntry(offsets[index - 1]);
+            entries[index - 1] = entry;
+        }
+        return entry;
+    }
+
+    // Returns the type without creating the entry, or null for the slot after Long and Double.
+    public ConstantType getType(int index) {
+        int offset = offsets[index - 1];
+        return (offset == 0 ? null : ConstantType.fromTag(buffer.get(offset) & 0xff));
+    }
+
+    public String getString(int index) {
+        return ((ConstantInfo.Utf8)get(index)).getString();
+    }
+
+    private ConstantInfo createEntry(int offset) {
+        ConstantType type = ConstantType.fromTag(buffer.get(offset) & 0xff);
+        int info = offset + 1;
+        switch (type) {
+            case Class:
+                return new ConstantInfo.Class(this, u2(info));
+            case Fieldref:
+                return new ConstantInfo.Fieldref(this, u2(info), u2(info + 2));
+            case Methodref:
+                return new ConstantInfo.Methodref(this, u2(info), u2(info + 2));
+            case InterfaceMethodref:
+                return new ConstantInfo.InterfaceMethodref(this, u2(info), u2(info + 2));
+            case String:
+                return new ConstantInfo.String(this, u2(info));
+            case Integer:
+                return new ConstantInfo.Integer(buffer.getInt(info));
+            case Float:
+                return new ConstantInfo.Float(buffer.getFloat(info));
+            case Long:
+                return new ConstantInfo.Long(buffer.getLong(info));
+            case Double:
+                return new ConstantInfo.Double(buffer.getDouble(info));
+            case NameAndType:
+                return new ConstantInfo.NameAndType(this, u2(info), u2(info + 2));
+            case Utf8:
+                return new ConstantInfo.Utf8(buffer, info + 2, u2(info));
+            case MethodHandle:
+                return new ConstantInfo.MethodHandle(buffer.get(info) & 0xff, u2(info + 1));
+            case MethodType:
+                return new ConstantInfo.MethodType(u2(info));
+            case InvokeDynamic:
+                return new ConstantInfo.InvokeDynamic(u2(info), u2(info + 2));
+            default:
+                throw new UnsupportedOperationException("Unhandled ConstantType: " + type);
+        }
+    }
+
+    private int u2(int offset) {
+        return buffer.getShort(offset) & 0xffff;
+    }
+}
@@ -4,21 +4,35 @@ import java.util.HashSet;
 import java.util.Set;
 
 public class FieldInfo {
-    private final Set<AccessFlag> accessFlags;
+    private final int accessFlags;
     private final String name;
     private final FieldType descriptor;
-    private final AttributeInfo[] attributes;
+    private final AttributeInfo.ConstantValue constantValue; // null if missing
 
-    FieldInfo(int accessFlags, int nameIndex, int descriptorIndex, AttributeInfo[] attributes, ConstantInfo[] constantPool) {
-        this.accessFlags = AccessFlag.fromInt(accessFlags);
-        this.name = ((ConstantInfo.Utf8)constantPool[nameIndex - 1]).getString();
-        this.descriptor = ClassFileParser.DescriptorParser.parseField(
-                ((ConstantInfo.Utf8)constantPool[descriptorIndex - 1]).getString());
-        this.attributes = attributes;
+    FieldInfo(int accessFlags, int nameIndex, int descriptorIndex, AttributeInfo[] attributes, ConstantPool constantPool) {
+        this.accessFlags = accessFlags;
+        this.name = constantPool.getString(nameIndex);
+        this.descriptor = ClassFileParser.DescriptorParser.parseField(constantPool.getString(descriptorIndex));
+        AttributeInfo.ConstantValue constantValue = null;
+        for (AttributeInfo attribute : attributes) {
+            if (attribute instanceof AttributeInfo.ConstantValue) {
+                constantValue = (AttributeInfo.ConstantValue)attribute;
+            }
+        }
+        this.constantValue = constantValue;
     }
 
+    // Built on each call. Use isXxx() to test a flag.
     public Set<AccessFlag> getAccessFlags() {
-        return accessFlags;
+        return AccessFlag.fromInt(accessFlags);
+    }
+
+    public boolean isStatic() {
+        return (accessFlags & AccessFlag.ACC_STATIC.getValue()) != 0;
+    }
+
+    public boolean isFinal() {
+        return (accessFlags & AccessFlag.ACC_FINAL.getValue()) != 0;
     }
 
     public String getName() {
@@ -30,12 +44,7 @@ public class FieldInfo {
     }
 
     public AttributeInfo.ConstantValue getConstantValueAttribute() {
-        for (AttributeInfo attribute : attributes) {
-            if (attribute.getName().equals("ConstantValue")) {
-                return (AttributeInfo.ConstantValue)attribute;
-            }
-        }
-        return null;
+        return constantValue;
     }
 
     public enum AccessFlag {
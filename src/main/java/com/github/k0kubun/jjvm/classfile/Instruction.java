@@ -2,41 +2,84 @@ package com.github.k0kubun.jjvm.classfile;
 
 import java.nio.ByteBuffer;
 
+// Operands are not copied from the classfile. An Instruction refers to the buffer given to
+// ClassFileParser.parse(ByteBuffer) by offset.
+//
+// `wide` is decoded as a flag of the instruction it modifies. For example, `wide iload` is an
+// Instruction of Opcode.Iload whose isWide() is true, and its operand is a u2 index.
 public class Instruction {
     private final Opcode opcode;
-    private final byte[] operands;
+    private final ByteBuffer buffer;
+    private final int operandsOffset;
+    private final int operandsLength;
     private final int padSize;
+    private final boolean wide;
 
-    Instruction(Opcode opcode, byte[] operands, int padSize) {
+    Instruction(Opcode opcode, ByteBuffer buffer, int operandsOffset, int operandsLength, int padSize) {
+        this(opcode, buffer, operandsOffset, operandsLength, padSize, false);
+    }
+
+    Instruction(Opcode opcode, ByteBuffer buffer, int operandsOffset, int operandsLength, int padSize, boolean wide) {
         this.opcode = opcode;
-        this.operands = operands;
+        this.buffer = buffer;
+        this.operandsOffset = operandsOffset;
+        this.operandsLength = operandsLength;
         this.padSize = padSize;
+        this.wide = wide;
     }
 
     public Opcode getOpcode() {
         return opcode;
     }
 
+    public boolean isWide() {
+        return wide;
+    }
+
+    // in bytes, including the opcode and the wide prefix
+    public int getLength() {
+        return (wide ? 2 : 1) + operandsLength;
+    }
+
+    // Returns a copy. Prefer getOperand() and getOperandsLength() in the interpreter.
     public byte[] getOperands() {
+        byte[] operands = new byte[operandsLength];
+        for (int i = 0; i < operandsLength; i++) {
+            operands[i] = buffer.get(operandsOffset + i);
+        }
         return operands;
     }
 
+    public byte getOperand(int index) {
+        return buffer.get(operandsOffset + index);
+    }
+
+    public int getOperandsLength() {
+        return operandsLength;
+    }
+
     public int getByte() {
-        return ByteBuffer.wrap(new byte[]{ 0, operands[0] }).getShort();
+        return buffer.get(operandsOffset) & 0xff;
     }
 
     // "indexbyte" operand
     public int getIndex() {
-        return ByteBuffer.wrap(this.operands).getShort();
+        return buffer.getShort(operandsOffset);
+    }
+
+    // For <x>load, <x>store, iinc and ret
+    public int getLocalIndex() {
+        return (wide ? buffer.getShort(operandsOffset) & 0xffff : buffer.get(operandsOffset) & 0xff);
+    }
+
+    // For iinc
+    public int getConst() {
+        return (wide ? buffer.getShort(operandsOffset + 2) : buffer.get(operandsOffset + 1));
     }
 
     // For tableswitch/lookupswitch
     public int getIntArg(int index) {
-        byte[] array = new byte[4];
-        for (int i = 0; i < 4; i++) {
-            array[i] = operands[padSize + (index * 4) + i];
-        }
-        return ByteBuffer.wrap(array).getInt();
+        return buffer.getInt(operandsOffset + padSize + (index * 4));
     }
 
     // https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html
@@ -142,9 +185,9 @@ public class Instruction {
         Dup_X1(0x5a, 0),
         Dup_X2(0x5b, 0),
         Dup2(0x5c, 0),
-        //Dup2_X1(0x5d, ),
-        //Dup2_X2(0x5e, ),
-        //Swap(0x5f, ),
+        Dup2_X1(0x5d, 0),
+        Dup2_X2(0x5e, 0),
+        Swap(0x5f, 0),
 
         // === Math ===
         Iadd(0x60, 0),
@@ -225,8 +268,8 @@ public class Instruction {
 
         // === Control ===
         Goto(0xa7, 2), // branchbyte1, branchbyte2
-        //Jsr(0xa8, ),
-        //Ret(0xa9, ),
+        Jsr(0xa8, 2), // branchbyte1, branchbyte2
+        Ret(0xa9, 1), // index
         Tableswitch(0xaa, -1), // variable-length: <0-3 byte pad> defaultbyte1,2,3,4 npairs1,2,3,4 match-offset pairs...
         Lookupswitch(0xab, -1), // variable-length: <0-3 byte pad> defaultbyte1,2,3,4 npairs1,2,3,4 match-offset pairs...
         Ireturn(0xac, 0),
@@ -257,15 +300,40 @@ public class Instruction {
         Monitorexit(0xc3, 0),
 
         // === Extended ===
-        Wide(0xc4, 3), // <opcode>, indexbyte1, indexbyte2
-        //Multianewarray(0xc5, ),
+        Wide(0xc4, -1), // variable-length: <opcode>, indexbyte1, indexbyte2 (, constbyte1, constbyte2 for iinc)
+        Multianewarray(0xc5, 3), // indexbyte1, indexbyte2, dimensions
         Ifnull(0xc6, 2), // branchbyte1, branchbyte2
-        Ifnonnull(0xc7, 2); // branchbyte1, branchbyte2
-        //Goto_W(0xc8, ),
-        //Jsr_W(0xc9, ),
+        Ifnonnull(0xc7, 2), // branchbyte1, branchbyte2
+        Goto_W(0xc8, 4), // branchbyte1, branchbyte2, branchbyte3, branchbyte4
+        Jsr_W(0xc9, 4), // branchbyte1, branchbyte2, branchbyte3, branchbyte4
+
+        // 0xca (breakpoint), 0xfe (impdep1) and 0xff (impdep2) are reserved, and must not appear in a classfile.
+
+        // === Internal ===
+        // Superinstructions fused by PackedCode. They are not decoded from a classfile.
+        Aload_Getfield(0xcb, 0),
+        Aload_Arraylength(0xcc, 0),
+        Iload_Iload_IfIcmpeq(0xcd, 0),
+        Iload_Iload_IfIcmpne(0xce, 0),
+        Iload_Iload_IfIcmplt(0xcf, 0),
+        Iload_Iload_IfIcmpge(0xd0, 0),
+        Iload_Iload_IfIcmpgt(0xd1, 0),
+        Iload_Iload_IfIcmple(0xd2, 0),
+        Iload_Iconst_Iadd_Istore(0xd3, 0);
+
+        private static final Opcode[] BY_CODE = new Opcode[256];
+        static {
+            for (Opcode opcode : values()) {
+                if (!opcode.isInternal()) {
+                    BY_CODE[opcode.getCode() & 0xff] = opcode;
+                }
+                opcode.format = opcode.findFormat();
+            }
+        }
 
         private final byte code;
         private final int argc;
+        private Format format; // set by the static initializer
 
         Opcode(int code, int argc) {
             this.code = (byte)code;
@@ -281,17 +349,89 @@ public class Instruction {
             return argc;
         }
 
+        // A superinstruction of PackedCode
+        public boolean isInternal() {
+            return (code & 0xff) > 0xca && (code & 0xff) < 0xfe;
+        }
+
         public String getName() {
             return toString().replaceAll("([a-z\\d])([A-Z])", "$1_$2").toLowerCase();
         }
 
         public static Opcode fromCode(byte code) {
-            for (Opcode opcode : Opcode.values()) {
-                if (opcode.getCode() == code) {
-                    return opcode;
-                }
+            Opcode opcode = BY_CODE[code & 0xff];
+            if (opcode == null) {
+                throw new RuntimeException(String.format("Opcode is not defined for code: 0x%02x", code));
+            }
+            return opcode;
+        }
+
+        // How to decode operands
+        public Format getFormat() {
+            return format;
+        }
+
+        private Format findFormat() {
+            switch (this) {
+                case Bipush:
+                    return Format.SignedByte;
+                case Sipush:
+                    return Format.SignedShort;
+                case Ifeq:
+                case Ifne:
+                case Iflt:
+                case Ifge:
+                case Ifgt:
+                case Ifle:
+                case IfIcmpeq:
+                case IfIcmpne:
+                case IfIcmplt:
+                case IfIcmpge:
+                case IfIcmpgt:
+                case IfIcmple:
+                case IfAcmpeq:
+                case IfAcmpne:
+                case Goto:
+                case Jsr:
+                case Ifnull:
+                case Ifnonnull:
+                    return Format.Branch;
+                case Goto_W:
+                case Jsr_W:
+                    return Format.BranchWide;
+                case Iinc:
+                    return Format.Iinc;
+                case Invokeinterface:
+                case Invokedynamic:
+                case Multianewarray:
+                    return Format.IndexAndByte;
+                case Tableswitch:
+                case Lookupswitch:
+                case Wide:
+                    return Format.Variable;
+                default:
+                    switch (argc) {
+                        case 0:
+                            return Format.None;
+                        case 1:
+                            return Format.UnsignedByte; // ldc, local variable indexes and atype
+                        default:
+                            return Format.UnsignedShort; // constant pool indexes
+                    }
             }
-            throw new RuntimeException(String.format("Opcode is not defined for code: 0x%02x", code));
         }
     }
+
+    public enum Format {
+        None,
+        UnsignedByte,
+        SignedByte,
+        UnsignedShort,
+        SignedShort,
+        Branch, // s2 offset
+        BranchWide, // s4 offset
+        Iinc, // u1 index, s1 const
+        IndexAndByte, // u2 constant pool index, u1 count or dimensions (, 0)
+        Variable, // tableswitch, lookupswitch and wide
+    }
 }
@@ -1,5 +1,6 @@
 package com.github.k0kubun.jjvm.classfile;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -7,23 +8,53 @@ import java.util.Map;
 import java.util.Set;
 
 public class MethodInfo {
-    private final Set<AccessFlag> accessFlags;
+    private final int accessFlags;
     private final String name;
     private final Descriptor descriptor;
-    private final Map<String, AttributeInfo> attributes;
+    private final AttributeInfo[] attributes;
+    private final AttributeInfo.Code code; // null for abstract and native methods
 
     MethodInfo(int accessFlags, String name, Descriptor descriptor, AttributeInfo[] attributes) {
-        this.accessFlags = AccessFlag.fromInt(accessFlags);
+        this.accessFlags = accessFlags;
         this.name = name;
         this.descriptor = descriptor;
-        this.attributes = new HashMap<>();
+        this.attributes = attributes;
+        AttributeInfo.Code code = null;
         for (AttributeInfo attribute : attributes) {
-            this.attributes.put(attribute.getName(), attribute);
+            if (attribute instanceof AttributeInfo.Code) {
+                code = (AttributeInfo.Code)attribute;
+            }
         }
+        this.code = code;
     }
 
+    // Built on each call. Use isXxx() to test a flag.
     public Set<AccessFlag> getAccessFlags() {
-        return accessFlags;
+        return AccessFlag.fromInt(accessFlags);
+    }
+
+    public boolean isPublic() {
+        return (accessFlags & AccessFlag.ACC_PUBLIC.getValue()) != 0;
+    }
+
+    public boolean isPrivate() {
+        return (accessFlags & AccessFlag.ACC_PRIVATE.getValue()) != 0;
+    }
+
+    public boolean isStatic() {
+        return (accessFlags & AccessFlag.ACC_STATIC.getValue()) != 0;
+    }
+
+    public boolean isSynchronized() {
+        return (accessFlags & AccessFlag.ACC_SYNCHRONIZED.getValue()) != 0;
+    }
+
+    public boolean isNative() {
+        return (accessFlags & AccessFlag.ACC_NATIVE.getValue()) != 0;
+    }
+
+    public boolean isAbstract() {
+        return (accessFlags & AccessFlag.ACC_ABSTRACT.getValue()) != 0;
     }
 
     public String getName() {
@@ -34,8 +65,17 @@ public class MethodInfo {
         return this.descriptor;
     }
 
+    // Built on each call, for the disassembler
     public Map<String, AttributeInfo> getAttributes() {
-        return this.attributes;
+        Map<String, AttributeInfo> map = new HashMap<>();
+        for (AttributeInfo attribute : attributes) {
+            map.put(attribute.getName(), attribute);
+        }
+        return map;
+    }
+
+    public AttributeInfo.Code getCode() {
+        return this.code;
     }
 
     public enum AccessFlag {
@@ -88,15 +128,52 @@ public class MethodInfo {
         }
     }
 
+    // Kinds of values returned by a method, as told by its <x>return instruction
+    public enum ReturnKind {
+        Void,
+        Int, // boolean, byte, char, short and int
+        Long,
+        Float,
+        Double,
+        Reference;
+
+        static ReturnKind fromDescriptor(ReturnDescriptor descriptor) {
+            if (descriptor instanceof VoidDescriptor) {
+                return Void;
+            } else if (descriptor == FieldType.LONG) {
+                return Long;
+            } else if (descriptor == FieldType.FLOAT) {
+                return Float;
+            } else if (descriptor == FieldType.DOUBLE) {
+                return Double;
+            } else if (descriptor instanceof FieldType.BaseType) {
+                return Int;
+            } else {
+                return Reference;
+            }
+        }
+    }
+
+    // Immutable and interned by DescriptorParser.parseMethod, so that identical descriptors are the same object.
     public static class Descriptor {
         private final String raw;
         private final ReturnDescriptor returnDescriptor;
         private final List<FieldType> parameters;
+        private final int parameterCount;
+        private final int parameterSlots; // long and double take two local variables
+        private final ReturnKind returnKind;
 
         Descriptor(String raw, ReturnDescriptor returnDescriptor, List<FieldType> parameters) {
             this.raw = raw;
             this.returnDescriptor = returnDescriptor;
-            this.parameters = parameters;
+            this.parameters = Collections.unmodifiableList(parameters);
+            this.parameterCount = parameters.size();
+            int slots = 0;
+            for (FieldType parameter : parameters) {
+                slots += (parameter == FieldType.LONG || parameter == FieldType.DOUBLE ? 2 : 1);
+            }
+            this.parameterSlots = slots;
+            this.returnKind = ReturnKind.fromDescriptor(returnDescriptor);
         }
 
         public String toString() {
@@ -107,13 +184,27 @@ public class MethodInfo {
             return returnDescriptor;
         }
 
+        public ReturnKind getReturnKind() {
+            return returnKind;
+        }
+
         public List<FieldType> getParameters() {
             return parameters;
         }
 
+        public int getParameterCount() {
+            return parameterCount;
+        }
+
+        // excluding `this`
+        public int getParameterSlots() {
+            return parameterSlots;
+        }
+
+        // Descriptors are interned, so equal ones are identical.
         @Override
         public boolean equals(Object other) {
-            return other instanceof Descriptor && raw.equals(other.toString());
+            return this == other;
         }
 
         @Override
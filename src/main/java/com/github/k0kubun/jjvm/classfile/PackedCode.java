@@ -0,0 +1,385 @@
+package com.github.k0kubun.jjvm.classfile;
+
+import com.github.k0kubun.jjvm.classfile.Instruction.Opcode;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// A compact form of the code[] of Code_attribute for the interpreter. Each instruction is a header
+// word followed by pre-decoded operand words, and instructions are laid out back to back:
+//
+//   header: (number of words including the header << 16) | Opcode#ordinal()
+//
+// Operands are sign- or zero-extended as the JVM spec says, and branch offsets are converted to
+// absolute indexes of this array. Operand words by opcode:
+//
+//   bipush, sipush:            value
+//   ldc, ldc_w, ldc2_w:        constant pool index
+//   <x>load, <x>store, ret:    local variable index
+//   iinc:                      local variable index, const
+//   if<cond>, goto, jsr...:    branch target
+//   tableswitch:               default target, low, high, targets[high - low + 1]
+//   lookupswitch:              default target, npairs, matches[npairs] (ascending), targets[npairs]
+//   invokeinterface:           constant pool index, count
+//   invokedynamic:             constant pool index, 0
+//   multianewarray:            constant pool index, dimensions
+//   newarray:                  atype
+//   others with operands:      constant pool index
+//
+// `wide` is not packed as itself. The instruction it modifies is packed with its u2 index (and s2 const
+// for iinc), so that the interpreter executes it as the normal form.
+//
+// Then frequent sequences are fused into superinstructions, the internal opcodes of Opcode, unless a
+// jump or an exception handler targets an instruction in the middle. A superinstruction takes over the
+// words of the sequence and its header covers all of them, so no instruction or branch target moves.
+// The rest of the words after its operands are left unused. Operand words by superinstruction:
+//
+//   aload_getfield:              local variable index, constant pool index
+//   aload_arraylength:           local variable index
+//   iload_iload_if_icmp<cond>:   local variable index, local variable index, branch target
+//   iload_iconst_iadd_istore:    local variable index, value, local variable index
+//
+// aload and iload in them may be any form of the load, and iconst may be iconst_<i>, bipush or sipush.
+public class PackedCode {
+    private static final Opcode[] OPCODES = Opcode.values();
+
+    private final int[] code;
+
+    private PackedCode(int[] code) {
+        this.code = code;
+    }
+
+    public int[] getCode() {
+        return code;
+    }
+
+    public static Opcode getOpcode(int header) {
+        return OPCODES[header & 0xffff];
+    }
+
+    // The distance to the next instruction
+    public static int getLength(int header) {
+        return header >>> 16;
+    }
+
+    // Pack code[code_length] at `offset` of `buffer`.
+    static PackedCode pack(ByteBuffer buffer, int offset, int codeLength) {
+        // First pass: find where each instruction starts in the packed form
+        int[] indexByPc = new int[codeLength + 1];
+        int length = 0;
+        for (int pc = 0; pc < codeLength;) {
+            Opcode opcode = Opcode.fromCode(buffer.get(offset + pc));
+            indexByPc[pc] = length;
+            length += 1 + operandWords(buffer, offset, pc, opcode);
+            pc += instructionSize(buffer, offset, pc, opcode);
+        }
+        indexByPc[codeLength] = length;
+
+        // Second pass: decode operands
+        int[] code = new int[length];
+        for (int pc = 0; pc < codeLength;) {
+            Opcode opcode = Opcode.fromCode(buffer.get(offset + pc));
+            int index = indexByPc[pc];
+            int words = 1 + operandWords(buffer, offset, pc, opcode);
+            Opcode packed = (opcode == Opcode.Wide ? Opcode.fromCode(buffer.get(offset + pc + 1)) : opcode);
+            code[index] = (words << 16) | packed.ordinal();
+
+            int operands = offset + pc + 1;
+            switch (opcode.getFormat()) {
+                case None:
+                    break;
+                case UnsignedByte:
+                    code[index + 1] = buffer.get(operands) & 0xff;
+                    break;
+                case SignedByte:
+                    code[index + 1] = buffer.get(operands);
+                    break;
+                case UnsignedShort:
+                    code[index + 1] = buffer.getShort(operands) & 0xffff;
+                    break;
+                case SignedShort:
+                    code[index + 1] = buffer.getShort(operands);
+                    break;
+                case Branch:
+                    code[index + 1] = indexByPc[pc + buffer.getShort(operands)];
+                    break;
+                case BranchWide:
+                    code[index + 1] = indexByPc[pc + buffer.getInt(operands)];
+                    break;
+                case Iinc:
+                    code[index + 1] = buffer.get(operands) & 0xff;
+                    code[index + 2] = buffer.get(operands + 1);
+                    break;
+                case IndexAndByte:
+                    code[index + 1] = buffer.getShort(operands) & 0xffff;
+                    code[index + 2] = buffer.get(operands + 2) & 0xff;
+                    break;
+                case Variable:
+                    packVariable(buffer, offset, pc, opcode, code, index, indexByPc);
+                    break;
+            }
+            pc += instructionSize(buffer, offset, pc, opcode);
+        }
+
+        fuse(code, findTargets(buffer, offset, codeLength, code, indexByPc));
+        return new PackedCode(code);
+    }
+
+    // Returns the target of lookupswitch at `index` for `key`, by a binary search of its matches.
+    public static int lookupswitch(int[] code, int index, int key) {
+        int nPairs = code[index + 2];
+        int low = index + 3;
+        int high = index + 3 + nPairs - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int match = code[middle];
+            if (match < key) {
+                low = middle + 1;
+            } else if (match > key) {
+                high = middle - 1;
+            } else {
+                return code[middle + nPairs];
+            }
+        }
+        return code[index + 1];
+    }
+
+    private static void packVariable(ByteBuffer buffer, int offset, int pc, Opcode opcode, int[] code, int index, int[] indexByPc) {
+        switch (opcode) {
+            case Tableswitch: {
+                int args = offset + pc + 1 + padSize(pc);
+                int low = buffer.getInt(args + 4);
+                int high = buffer.getInt(args + 8);
+                code[index + 1] = indexByPc[pc + buffer.getInt(args)];
+                code[index + 2] = low;
+                code[index + 3] = high;
+                for (int i = 0; i < high - low + 1; i++) {
+                    code[index + 4 + i] = indexByPc[pc + buffer.getInt(args + 12 + 4 * i)];
+                }
+                break;
+            }
+            case Lookupswitch: {
+                int args = offset + pc + 1 + padSize(pc);
+                int nPairs = buffer.getInt(args + 4);
+                code[index + 1] = indexByPc[pc + buffer.getInt(args)];
+                code[index + 2] = nPairs;
+                // Pairs must be sorted by match, but sort them here since nothing verifies them.
+                long[] pairs = new long[nPairs];
+                for (int i = 0; i < nPairs; i++) {
+                    int match = buffer.getInt(args + 8 + 8 * i);
+                    int target = indexByPc[pc + buffer.getInt(args + 12 + 8 * i)];
+                    pairs[i] = ((long)match << 32) | target;
+                }
+                Arrays.sort(pairs);
+                for (int i = 0; i < nPairs; i++) {
+                    code[index + 3 + i] = (int)(pairs[i] >> 32);
+                    code[index + 3 + nPairs + i] = (int)pairs[i];
+                }
+                break;
+            }
+            case Wide: {
+                // Packed as the modified instruction with a u2 index (and an s2 const for iinc)
+                int operands = offset + pc + 2;
+                code[index + 1] = buffer.getShort(operands) & 0xffff;
+                if (Opcode.fromCode(buffer.get(offset + pc + 1)) == Opcode.Iinc) {
+                    code[index + 2] = buffer.getShort(operands + 2);
+                }
+                break;
+            }
+            default:
+                throw new RuntimeException("unexpected variable-length opcode: " + opcode.getName());
+        }
+    }
+
+    // Instructions which a jump, a switch or the exception table of Code_attribute, which follows code[], may
+    // transfer control to. Both ends of exception ranges are included not to fuse instructions across them.
+    private static boolean[] findTargets(ByteBuffer buffer, int offset, int codeLength, int[] code, int[] indexByPc) {
+        boolean[] targets = new boolean[code.length + 1];
+        for (int index = 0; index < code.length; index += getLength(code[index])) {
+            Opcode opcode = getOpcode(code[index]);
+            switch (opcode.getFormat()) {
+                case Branch:
+                case BranchWide:
+                    targets[code[index + 1]] = true;
+                    break;
+                case Variable:
+                    if (opcode == Opcode.Tableswitch || opcode == Opcode.Lookupswitch) {
+                        targets[code[index + 1]] = true;
+                        int first = (opcode == Opcode.Tableswitch ? index + 4 : index + 3 + code[index + 2]);
+                        for (int i = first; i < index + getLength(code[index]); i++) {
+                            targets[code[i]] = true;
+                        }
+                    }
+                    break;
+            }
+        }
+
+        int exceptionTable = offset + codeLength;
+        int exceptionTableLength = buffer.getShort(exceptionTable) & 0xffff;
+        for (int i = 0; i < exceptionTableLength; i++) {
+            int entry = exceptionTable + 2 + 8 * i;
+            targets[indexByPc[buffer.getShort(entry) & 0xffff]] = true; // start_pc
+            targets[indexByPc[buffer.getShort(entry + 2) & 0xffff]] = true; // end_pc
+            targets[indexByPc[buffer.getShort(entry + 4) & 0xffff]] = true; // handler_pc
+        }
+        return targets;
+    }
+
+    private static void fuse(int[] code, boolean[] targets) {
+        for (int index = 0; index < code.length; index += getLength(code[index])) {
+            int second = index + getLength(code[index]);
+            if (second >= code.length || targets[second]) {
+                continue;
+            }
+            int third = second + getLength(code[second]);
+
+            int local = aloadIndex(code, index);
+            if (local >= 0 && getOpcode(code[second]) == Opcode.Getfield) {
+                int field = code[second + 1];
+                code[index] = ((third - index) << 16) | Opcode.Aload_Getfield.ordinal();
+                code[index + 1] = local;
+                code[index + 2] = field;
+                continue;
+            }
+            if (local >= 0 && getOpcode(code[second]) == Opcode.Arraylength) {
+                code[index] = ((third - index) << 16) | Opcode.Aload_Arraylength.ordinal();
+                code[index + 1] = local;
+                continue;
+            }
+
+            local = iloadIndex(code, index);
+            if (local < 0 || third >= code.length || targets[third]) {
+                continue;
+            }
+            int fourth = third + getLength(code[third]);
+
+            int local2 = iloadIndex(code, second);
+            Opcode fused = ifIcmpSuperinstruction(getOpcode(code[third]));
+            if (local2 >= 0 && fused != null) {
+                int target = code[third + 1];
+                code[index] = ((fourth - index) << 16) | fused.ordinal();
+                code[index + 1] = local;
+                code[index + 2] = local2;
+                code[index + 3] = target;
+                continue;
+            }
+
+            if (fourth >= code.length || targets[fourth]) {
+                continue;
+            }
+            int end = fourth + getLength(code[fourth]);
+            Opcode store = getOpcode(code[fourth]);
+            if (isIconst(code, second) && getOpcode(code[third]) == Opcode.Iadd
+                    && (store == Opcode.Istore || (store.ordinal() >= Opcode.Istore_0.ordinal() && store.ordinal() <= Opcode.Istore_3.ordinal()))) {
+                int value = iconstValue(code, second);
+                int storeLocal = (store == Opcode.Istore ? code[fourth + 1] : store.ordinal() - Opcode.Istore_0.ordinal());
+                code[index] = ((end - index) << 16) | Opcode.Iload_Iconst_Iadd_Istore.ordinal();
+                code[index + 1] = local;
+                code[index + 2] = value;
+                code[index + 3] = storeLocal;
+            }
+        }
+    }
+
+    // The local variable index of aload or aload_<n> at `index`, or -1 for others
+    private static int aloadIndex(int[] code, int index) {
+        Opcode opcode = getOpcode(code[index]);
+        if (opcode == Opcode.Aload) {
+            return code[index + 1];
+        } else if (opcode.ordinal() >= Opcode.Aload_0.ordinal() && opcode.ordinal() <= Opcode.Aload_3.ordinal()) {
+            return opcode.ordinal() - Opcode.Aload_0.ordinal();
+        } else {
+            return -1;
+        }
+    }
+
+    // The local variable index of iload or iload_<n> at `index`, or -1 for others
+    private static int iloadIndex(int[] code, int index) {
+        Opcode opcode = getOpcode(code[index]);
+        if (opcode == Opcode.Iload) {
+            return code[index + 1];
+        } else if (opcode.ordinal() >= Opcode.Iload_0.ordinal() && opcode.ordinal() <= Opcode.Iload_3.ordinal()) {
+            return opcode.ordinal() - Opcode.Iload_0.ordinal();
+        } else {
+            return -1;
+        }
+    }
+
+    private static boolean isIconst(int[] code, int index) {
+        Opcode opcode = getOpcode(code[index]);
+        return opcode == Opcode.Bipush || opcode == Opcode.Sipush
+                || (opcode.ordinal() >= Opcode.Iconst_M1.ordinal() && opcode.ordinal() <= Opcode.Iconst_5.ordinal());
+    }
+
+    private static int iconstValue(int[] code, int index) {
+        Opcode opcode = getOpcode(code[index]);
+        if (opcode == Opcode.Bipush || opcode == Opcode.Sipush) {
+            return code[index + 1];
+        } else {
+            return opcode.ordinal() - Opcode.Iconst_0.ordinal();
+        }
+    }
+
+    private static Opcode ifIcmpSuperinstruction(Opcode opcode) {
+        switch (opcode) {
+            case IfIcmpeq:
+                return Opcode.Iload_Iload_IfIcmpeq;
+            case IfIcmpne:
+                return Opcode.Iload_Iload_IfIcmpne;
+            case IfIcmplt:
+                return Opcode.Iload_Iload_IfIcmplt;
+            case IfIcmpge:
+                return Opcode.Iload_Iload_IfIcmpge;
+            case IfIcmpgt:
+                return Opcode.Iload_Iload_IfIcmpgt;
+            case IfIcmple:
+                return Opcode.Iload_Iload_IfIcmple;
+            default:
+                return null;
+        }
+    }
+
+    private static int operandWords(ByteBuffer buffer, int offset, int pc, Opcode opcode) {
+        switch (opcode) {
+            case Tableswitch: {
+                int args = offset + pc + 1 + padSize(pc);
+                return 3 + (buffer.getInt(args + 8) - buffer.getInt(args + 4) + 1);
+            }
+            case Lookupswitch:
+                return 2 + 2 * buffer.getInt(offset + pc + 1 + padSize(pc) + 4);
+            case Wide:
+                return (Opcode.fromCode(buffer.get(offset + pc + 1)) == Opcode.Iinc ? 2 : 1);
+            default:
+                switch (opcode.getFormat()) {
+                    case None:
+                        return 0;
+                    case Iinc:
+                    case IndexAndByte:
+                        return 2;
+                    default:
+                        return 1;
+                }
+        }
+    }
+
+    // in bytes
+    private static int instructionSize(ByteBuffer buffer, int offset, int pc, Opcode opcode) {
+        switch (opcode) {
+            case Tableswitch: {
+                int args = offset + pc + 1 + padSize(pc);
+                return 1 + padSize(pc) + 12 + 4 * (buffer.getInt(args + 8) - buffer.getInt(args + 4) + 1);
+            }
+            case Lookupswitch:
+                return 1 + padSize(pc) + 8 + 8 * buffer.getInt(offset + pc + 1 + padSize(pc) + 4);
+            case Wide:
+                return (Opcode.fromCode(buffer.get(offset + pc + 1)) == Opcode.Iinc ? 6 : 4);
+            default:
+                return 1 + opcode.getArgc();
+        }
+    }
+
+    // Operands of tableswitch and lookupswitch start at a multiple of 4 from the start of code.
+    private static int padSize(int pc) {
+        return (4 - (pc + 1) % 4) % 4;
+    }
+}
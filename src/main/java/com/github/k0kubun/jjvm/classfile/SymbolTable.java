@@ -0,0 +1,37 @@
+package com.github.k0kubun.jjvm.classfile;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+// Strings shared by all classes, like HotSpot's SymbolTable. Every Utf8 constant is interned here when
+// it's decoded, so class names, member names, descriptors and attribute names of different classes are
+// the same String objects, and symbols from constant pools can be compared with ==.
+//
+// Symbols are held weakly, so that they are collected with the last ClassFile using them, e.g. when
+// ClassFileCache evicts it or after a batch parse of a jar. Values are WeakReference too, since a value
+// referencing its own key would keep the entry forever.
+public class SymbolTable {
+    private static final Map<String, WeakReference<String>> symbols = new WeakHashMap<>();
+
+    private SymbolTable() {
+    }
+
+    public static String intern(String string) {
+        synchronized (symbols) {
+            WeakReference<String> reference = symbols.get(string);
+            String symbol = (reference == null ? null : reference.get());
+            if (symbol == null) {
+                symbols.put(string, new WeakReference<>(string));
+                symbol = string;
+            }
+            return symbol;
+        }
+    }
+
+    public static int size() {
+        synchronized (symbols) {
+            return symbols.size();
+        }
+    }
+}
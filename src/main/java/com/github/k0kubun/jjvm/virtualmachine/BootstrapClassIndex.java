@@ -0,0 +1,236 @@
+package com.github.k0kubun.jjvm.virtualmachine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// A persistent index of the class entries in bootstrap jars. Each jar is validated by its size and
+// mtime, so a warm start opens jars without reading their central directories. Jars which are not
+// in the index (or changed) are scanned with one thread per jar, and then the index is rewritten.
+// Jars in -cp are indexed in the same format, in another index file.
+class BootstrapClassIndex {
+    // index_file {
+    //     u4    magic;
+    //     u4    version;
+    //     u2    jars_count;
+    //     jar   jars[jars_count];
+    // }
+    // jar {
+    //     utf   path;
+    //     u8    size;
+    //     u8    last_modified;
+    //     u4    entries_count;
+    //     entry entries[entries_count]; // sorted by name
+    // }
+    // entry {
+    //     u2    shared_prefix_length; // with the previous entry's name
+    //     utf   name_suffix;
+    //     u1    method;
+    //     u4    crc32;
+    //     u4    compressed_size;
+    //     u4    uncompressed_size;
+    //     u4    local_header_offset;
+    // }
+    private static final int MAGIC = 0x4a4a4249; // "JJBI"
+    private static final int VERSION = 1;
+
+    private final File indexFile;
+
+    BootstrapClassIndex(File indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    // Open jars in the order of `jarPaths`. Missing jars are skipped.
+    List<ClassPathJar> openJars(String[] jarPaths) {
+        Map<String, IndexedJar> indexedJars = readIndex();
+
+        ClassPathJar[] jars = new ClassPathJar[jarPaths.length];
+        List<Integer> unindexed = new ArrayList<>();
+        for (int i = 0; i < jarPaths.length; i++) {
+            IndexedJar indexed = indexedJars.get(jarPaths[i]);
+            File file = new File(jarPaths[i]);
+            if (indexed != null && indexed.size == file.length() && indexed.lastModified == file.lastModified()) {
+                jars[i] = openJar(jarPaths[i], indexed.entries);
+            } else if (file.isFile()) {
+                unindexed.add(i);
+            }
+        }
+
+        if (!unindexed.isEmpty()) {
+            scanJars(jarPaths, unindexed, jars);
+            writeIndex(jars);
+        }
+
+        List<ClassPathJar> result = new ArrayList<>();
+        for (ClassPathJar jar : jars) {
+            if (jar != null) {
+                result.add(jar);
+            }
+        }
+        return result;
+    }
+
+    // Read central directories of jars at `indexes` in parallel, one thread per jar.
+    private void scanJars(String[] jarPaths, List<Integer> indexes, ClassPathJar[] jars) {
+        ExecutorService executor = Executors.newFixedThreadPool(indexes.size());
+        try {
+            List<Future<ClassPathJar>> futures = new ArrayList<>();
+            for (int i : indexes) {
+                futures.add(executor.submit(() -> openJar(jarPaths[i], null)));
+            }
+            for (int i = 0; i < indexes.size(); i++) {
+                jars[indexes.get(i)] = futures.get(i).get();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Failed to scan bootstrap jars: " + e.toString());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private ClassPathJar openJar(String jarPath, Map<String, ClassPathJar.Entry> entries) {
+        try {
+            return new ClassPathJar(jarPath, entries);
+        } catch (FileNotFoundException e) {
+            // expected for "jre/lib/sunrsasign.jar" and "jre/classes"
+        } catch (IOException e) {
+            System.out.println(String.format("Error while loading '%s': %s", jarPath, e.toString()));
+        }
+        return null;
+    }
+
+    // Returns an empty map if the index doesn't exist or is unreadable.
+    private Map<String, IndexedJar> readIndex() {
+        Map<String, IndexedJar> indexedJars = new HashMap<>();
+        if (!indexFile.isFile()) {
+            return indexedJars;
+        }
+
+        try (DataInputStream stream = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (stream.readInt() != MAGIC || stream.readInt() != VERSION) {
+                return indexedJars;
+            }
+            int jarsCount = stream.readUnsignedShort();
+            for (int i = 0; i < jarsCount; i++) {
+                String path = stream.readUTF();
+                long size = stream.readLong();
+                long lastModified = stream.readLong();
+                int entriesCount = stream.readInt();
+
+                Map<String, ClassPathJar.Entry> entries = new HashMap<>(entriesCount * 4 / 3 + 1);
+                String name = "";
+                for (int j = 0; j < entriesCount; j++) {
+                    int sharedPrefixLength = stream.readUnsignedShort();
+                    name = name.substring(0, sharedPrefixLength) + stream.readUTF();
+                    int method = stream.readUnsignedByte();
+                    int crc = stream.readInt();
+                    int compressedSize = stream.readInt();
+                    int uncompressedSize = stream.readInt();
+                    long localHeaderOffset = Integer.toUnsignedLong(stream.readInt());
+                    entries.put(name, new ClassPathJar.Entry(name, method, crc, compressedSize, uncompressedSize, localHeaderOffset));
+                }
+                indexedJars.put(path, new IndexedJar(size, lastModified, entries));
+            }
+        } catch (IOException e) {
+            // broken index: rebuild it
+            return new HashMap<>();
+        }
+        return indexedJars;
+    }
+
+    // The index is only a cache, so a failure to write it is ignored.
+    private void writeIndex(ClassPathJar[] jars) {
+        File directory = indexFile.getAbsoluteFile().getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            return;
+        }
+
+        File tempFile = null;
+        try {
+            tempFile = File.createTempFile(indexFile.getName(), ".tmp", directory);
+            try (DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+                stream.writeInt(MAGIC);
+                stream.writeInt(VERSION);
+
+                int jarsCount = 0;
+                for (ClassPathJar jar : jars) {
+                    if (jar != null) {
+                        jarsCount++;
+                    }
+                }
+                stream.writeShort(jarsCount);
+
+                for (ClassPathJar jar : jars) {
+                    if (jar == null) {
+                        continue;
+                    }
+                    String[] names = jar.getEntryNames().stream()
+                            .filter(name -> name.endsWith(".class")).toArray(String[]::new);
+                    Arrays.sort(names);
+
+                    stream.writeUTF(jar.getPath());
+                    stream.writeLong(jar.getSize());
+                    stream.writeLong(jar.getLastModified());
+                    stream.writeInt(names.length);
+
+                    String previous = "";
+                    for (String name : names) {
+                        int shared = sharedPrefixLength(previous, name);
+                        ClassPathJar.Entry entry = jar.getEntry(name);
+                        stream.writeShort(shared);
+                        stream.writeUTF(name.substring(shared));
+                        stream.writeByte(entry.getMethod());
+                        stream.writeInt(entry.getCrc());
+                        stream.writeInt(entry.getCompressedSize());
+                        stream.writeInt(entry.getUncompressedSize());
+                        stream.writeInt((int)entry.getLocalHeaderOffset());
+                        previous = name;
+                    }
+                }
+            }
+            Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            if (tempFile != null) {
+                tempFile.delete();
+            }
+        }
+    }
+
+    private static int sharedPrefixLength(String a, String b) {
+        int length = Math.min(Math.min(a.length(), b.length()), 0xffff);
+        int i = 0;
+        while (i < length && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    private static class IndexedJar {
+        final long size;
+        final long lastModified;
+        final Map<String, ClassPathJar.Entry> entries;
+
+        IndexedJar(long size, long lastModified, Map<String, ClassPathJar.Entry> entries) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.entries = entries;
+        }
+    }
+}
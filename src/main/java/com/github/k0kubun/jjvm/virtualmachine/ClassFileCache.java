@@ -0,0 +1,130 @@
+package com.github.k0kubun.jjvm.virtualmachine;
+
+import com.github.k0kubun.jjvm.classfile.ClassFile;
+
+import java.lang.ref.SoftReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// A process-wide cache of parsed classfiles shared by all VirtualMachine instances. Only ClassFile,
+// which is immutable after parse, is shared. Statics and Value.Class stay in each VirtualMachine.
+// Entries are evicted in LRU order beyond `maxEntries`, and also by GC through SoftReference.
+public class ClassFileCache {
+    private static final ClassFileCache INSTANCE = new ClassFileCache(
+            Integer.getInteger("jjvm.classFileCache.maxEntries", 8192));
+
+    private final LruMap entries;
+    private long hitCount;
+    private long missCount;
+
+    private ClassFileCache(int maxEntries) {
+        this.entries = new LruMap(maxEntries);
+    }
+
+    public static ClassFileCache getInstance() {
+        return INSTANCE;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void setMaxEntries(int maxEntries) {
+        entries.maxEntries = maxEntries;
+        while (entries.size() > maxEntries) {
+            entries.remove(entries.keySet().iterator().next());
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    // Returns null on a miss.
+    synchronized ClassFile get(Key key) {
+        SoftReference<ClassFile> reference = entries.get(key);
+        ClassFile classFile = (reference == null ? null : reference.get());
+        if (classFile == null) {
+            if (reference != null) {
+                entries.remove(key); // collected by GC
+            }
+            missCount++;
+        } else {
+            hitCount++;
+        }
+        return classFile;
+    }
+
+    synchronized void put(Key key, ClassFile classFile) {
+        entries.put(key, new SoftReference<>(classFile));
+    }
+
+    // A LinkedHashMap in access order which drops the least recently used entry beyond `maxEntries`
+    private static class LruMap extends LinkedHashMap<Key, SoftReference<ClassFile>> {
+        private static final long serialVersionUID = 1L;
+
+        private int maxEntries;
+
+        LruMap(int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, SoftReference<ClassFile>> eldest) {
+            return size() > maxEntries;
+        }
+    }
+
+    // `source` is the classpath entry (jar, directory or shared class archive) the class was found in,
+    // and `contentHash` is CRC32 of the classfile. For a shared class archive, whose classfiles are not
+    // hashed, `identity` is that of the archive and `contentHash` is the offset of the entry in it.
+    static class Key {
+        private final String source;
+        private final String identity;
+        private final String filename;
+        private final long contentHash;
+
+        Key(String source, String filename, long contentHash) {
+            this(source, "", filename, contentHash);
+        }
+
+        Key(String source, String identity, String filename, long contentHash) {
+            this.source = source;
+            this.identity = identity;
+            this.filename = filename;
+            this.contentHash = contentHash;
+        }
+
+        String getSource() {
+            return source;
+        }
+
+        String getFilename() {
+            return filename;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key)other;
+            return contentHash == key.contentHash && filename.equals(key.filename) && source.equals(key.source)
+                    && identity.equals(key.identity);
+        }
+
+        @Override
+        public int hashCode() {
+            return ((source.hashCode() * 31 + identity.hashCode()) * 31 + filename.hashCode()) * 31 + Long.hashCode(contentHash);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.github.k0kubun.jjvm.virtualmachine;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Per-class timeline of class loading enabled by -Xjjvmstat:classload. Lookup and parse are recorded by
+// ClassLoader, possibly on ClassPrefetcher threads, and initialization by VirtualMachine.
+public class ClassLoadStatistics {
+    private static final int SUMMARY_ROWS = 20;
+
+    private final Map<String, Record> records;
+    private final List<Record> loadOrder;
+
+    public ClassLoadStatistics() {
+        this.records = new HashMap<>();
+        this.loadOrder = new ArrayList<>();
+    }
+
+    synchronized void recordLookup(String klass, long nanos) {
+        getRecord(klass).lookupNanos += nanos;
+    }
+
+    synchronized void recordParse(String klass, String source, int bytes, long nanos) {
+        Record record = getRecord(klass);
+        record.source = source;
+        record.bytesRead += bytes;
+        record.parseNanos += nanos;
+        record.lookupNanos -= nanos; // recordLookup includes parse
+    }
+
+    // Called when the VM actually uses the class, as opposed to prefetching it.
+    synchronized void recordLoad(String klass) {
+        Record record = getRecord(klass);
+        if (record.loadIndex == -1) {
+            record.loadIndex = loadOrder.size();
+            loadOrder.add(record);
+        }
+    }
+
+    synchronized void recordInitialize(String klass, String trigger, long clinitNanos) {
+        Record record = getRecord(klass);
+        record.trigger = trigger;
+        record.clinitNanos += clinitNanos;
+    }
+
+    // The slowest classes and totals, for humans
+    public synchronized void printSummary(PrintStream out) {
+        long lookupNanos = 0;
+        long parseNanos = 0;
+        long bytesRead = 0;
+        int cachedCount = 0;
+        for (Record record : loadOrder) {
+            lookupNanos += record.lookupNanos;
+            parseNanos += record.parseNanos;
+            bytesRead += record.bytesRead;
+            if (record.source == null) {
+                cachedCount++;
+            }
+        }
+
+        out.println("Class loading statistics (clinit includes classes loaded by it):");
+        out.println(String.format("  classes: %d (%d not parsed: cached), prefetched but unused: %d",
+                loadOrder.size(), cachedCount, records.size() - loadOrder.size()));
+        out.println(String.format("  lookup: %.3f ms, parse: %.3f ms, read: %d bytes",
+                lookupNanos / 1e6, parseNanos / 1e6, bytesRead));
+        out.println();
+        out.println(String.format("  %-4s %10s %10s %10s %8s  %s", "#", "lookup ms", "parse ms", "clinit ms", "bytes", "class (trigger)"));
+
+        List<Record> slowest = new ArrayList<>(loadOrder);
+        slowest.sort(Comparator.comparingLong(Record::getTotalNanos).reversed());
+        for (Record record : slowest.subList(0, Math.min(SUMMARY_ROWS, slowest.size()))) {
+            out.println(String.format("  %-4d %10.3f %10.3f %10.3f %8d  %s%s",
+                    record.loadIndex, record.lookupNanos / 1e6, record.parseNanos / 1e6, record.clinitNanos / 1e6,
+                    record.bytesRead, record.klass, (record.trigger == null ? "" : " (" + record.trigger + ")")));
+        }
+    }
+
+    // One tab-separated line per loaded class in load order, with a header line, for tools
+    public synchronized void dump(File file) throws IOException {
+        try (PrintWriter writer = new PrintWriter(file, StandardCharsets.UTF_8.name())) {
+            writer.println("index\tclass\ttrigger\tsource\tlookup_ns\tbytes_read\tparse_ns\tclinit_ns");
+            for (Record record : loadOrder) {
+                writer.println(String.format("%d\t%s\t%s\t%s\t%d\t%d\t%d\t%d",
+                        record.loadIndex, record.klass, (record.trigger == null ? "" : record.trigger),
+                        (record.source == null ? "" : record.source), record.lookupNanos, record.bytesRead,
+                        record.parseNanos, record.clinitNanos));
+            }
+        }
+    }
+
+    private Record getRecord(String klass) {
+        return records.computeIfAbsent(klass, Record::new);
+    }
+
+    private static class Record {
+        private final String klass;
+        private int loadIndex = -1;
+        private String trigger; // a class whose method was running when `klass` was initialized
+        private String source; // null if it's not parsed, i.e. taken from ClassFileCache
+        private long lookupNanos;
+        private long bytesRead;
+        private long parseNanos;
+        private long clinitNanos;
+
+        Record(String klass) {
+            this.klass = klass;
+        }
+
+        long getTotalNanos() {
+            return lookupNanos + parseNanos + clinitNanos;
+        }
+    }
+}
@@ -4,81 +4,326 @@ import com.github.k0kubun.jjvm.classfile.ClassFile;
 import com.github.k0kubun.jjvm.classfile.ClassFileParser;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
 
 class ClassLoader {
-    private final Map<String, String> jarByClass;
-    private final List<String> classPaths;
+    private static final File CACHE_DIRECTORY = new File(System.getProperty("user.home"), ".jjvm/cache");
 
-    ClassLoader(String classPath) {
-        jarByClass = new HashMap<>();
-        setupBootstrapSearchPath(jarByClass);
+    private final String bootClassPath; // or the jimage path in Java 9+
+    private final JImage bootImage; // only in Java 9+
+    private Map<String, ClassPathJar> jarByClass; // set up on the first miss of sharedArchive
+    private final String classPath;
+    private Map<String, ClassPathEntry> entryByClass; // set up on the first miss of jarByClass
+    private final List<ClassPathEntry> openedEntries; // of jarByClass and entryByClass, to be closed
+    private final Set<String> missingClasses; // negative cache of findClass
+    private final SharedClassArchive sharedArchive; // only for ShareMode.ON
+    private final Map<String, byte[]> dumpedClasses; // only for ShareMode.DUMP
+    private final Set<String> loadedClasses; // only for ShareMode.DUMP, to exclude prefetched but unused ones
+    private final ClassFileCache classFileCache;
+    private final ClassPrefetcher prefetcher; // null unless -Xjjvmprefetch
+    private final ClassLoadStatistics statistics; // null unless -Xjjvmstat:classload
 
-        classPaths = new ArrayList<>();
-        for (String path : classPath.split(":")) {
-            classPaths.add(path);
+    ClassLoader(String classPath, VirtualMachine.ShareMode shareMode, boolean prefetch, ClassLoadStatistics statistics) {
+        if (System.getProperty("sun.boot.class.path") != null) {
+            bootClassPath = System.getProperty("sun.boot.class.path");
+            bootImage = null;
+        } else { // Java 9+
+            bootClassPath = new File(System.getProperty("java.home"), "lib/modules").getPath();
+            try {
+                bootImage = new JImage(bootClassPath);
+            } catch (IOException e) {
+                throw new RuntimeException(String.format("Failed to open '%s': %s", bootClassPath, e.toString()));
+            }
+        }
+
+        this.classPath = classPath;
+        missingClasses = ConcurrentHashMap.newKeySet();
+        openedEntries = new ArrayList<>();
+
+        if (shareMode == VirtualMachine.ShareMode.ON) {
+            try {
+                sharedArchive = SharedClassArchive.open(sharedArchiveFile(), SharedClassArchive.bootstrapIdentity(bootClassPath));
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to map shared class archive: " + e.toString());
+            }
+            if (sharedArchive == null) {
+                throw new RuntimeException(String.format("Shared class archive '%s' is missing, out of date or broken. "
+                        + "Run with -Xjjvmshare:dump first.", sharedArchiveFile()));
+            }
+        } else {
+            sharedArchive = null;
         }
+        dumpedClasses = (shareMode == VirtualMachine.ShareMode.DUMP ? new LinkedHashMap<>() : null);
+        loadedClasses = (shareMode == VirtualMachine.ShareMode.DUMP ? new HashSet<>() : null);
+        classFileCache = ClassFileCache.getInstance();
+        prefetcher = (prefetch ? new ClassPrefetcher(this::findClass) : null);
+        this.statistics = statistics;
     }
 
     public ClassFile loadClass(String klass) {
+        ClassFile classFile = null;
+        if (prefetcher != null) {
+            classFile = prefetcher.take(klass);
+        }
+        if (classFile == null) {
+            classFile = findClass(klass);
+        }
+        if (classFile == null) {
+            throw new RuntimeException(String.format("Class '%s' was not found in classpath", klass));
+        }
+
+        if (statistics != null) {
+            statistics.recordLoad(klass);
+        }
+        if (loadedClasses != null) {
+            synchronized (dumpedClasses) {
+                loadedClasses.add(String.format("%s.class", klass));
+            }
+        }
+        if (prefetcher != null) {
+            prefetcher.prefetchReferences(classFile);
+        }
+        return classFile;
+    }
+
+    // Locate and parse a class, or return null if it's missing. This may be called by ClassPrefetcher
+    // threads concurrently.
+    private ClassFile findClass(String klass) {
+        if (statistics == null) {
+            return locateClass(klass);
+        }
+        long start = System.nanoTime();
+        ClassFile classFile = locateClass(klass);
+        statistics.recordLookup(klass, System.nanoTime() - start);
+        return classFile;
+    }
+
+    private ClassFile locateClass(String klass) {
         String filename = String.format("%s.class", klass);
+        if (missingClasses.contains(filename)) {
+            return null;
+        }
+
+        if (sharedArchive != null) {
+            int entry = sharedArchive.findEntry(filename);
+            if (entry != -1) {
+                ClassFileCache.Key key = new ClassFileCache.Key(sharedArchiveFile().getPath(), sharedArchive.getIdentity(), filename, entry);
+                ClassFile classFile = classFileCache.get(key);
+                if (classFile == null) {
+                    classFile = parse(key, sharedArchive.getClassfile(entry)); // straight from the mapping
+                }
+                return classFile;
+            }
+        }
+
+        if (bootImage != null) {
+            try {
+                ByteBuffer classfile = bootImage.findClass(filename);
+                if (classfile != null) {
+                    CRC32 crc = new CRC32();
+                    crc.update(classfile.duplicate());
+                    ClassFileCache.Key key = new ClassFileCache.Key(bootImage.getPath(), filename, crc.getValue());
+                    ClassFile classFile = (dumpedClasses == null ? classFileCache.get(key) : null);
+                    if (classFile == null) {
+                        classFile = parse(key, classfile);
+                    }
+                    if (dumpedClasses != null) {
+                        byte[] bytes = new byte[classfile.remaining()];
+                        classfile.get(bytes);
+                        synchronized (dumpedClasses) {
+                            dumpedClasses.put(filename, bytes);
+                        }
+                    }
+                    return classFile;
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(String.format("Failed to load '%s' from '%s': %s", filename, bootImage.getPath(), e.toString()));
+            }
+        }
 
+        Map<String, ClassPathJar> jarByClass = getJarByClass();
         if (jarByClass.containsKey(filename)) {
-            String jarPath = jarByClass.get(filename);
-            try (ZipInputStream jarStream = new ZipInputStream(new FileInputStream(jarPath))) {
-                ZipEntry entry;
-                while ((entry = jarStream.getNextEntry()) != null) {
-                    if (entry.getName().equals(filename)) {
-                        return new ClassFileParser().parse(jarStream);
+            ClassPathJar jar = jarByClass.get(filename);
+            ClassPathJar.Entry entry = jar.getEntry(filename);
+            ClassFileCache.Key key = new ClassFileCache.Key(jar.getPath(), filename, Integer.toUnsignedLong(entry.getCrc()));
+            ClassFile classFile = (dumpedClasses == null ? classFileCache.get(key) : null);
+            if (classFile != null) {
+                return classFile;
+            }
+
+            try {
+                byte[] bytes = jar.read(entry);
+                classFile = parse(key, ByteBuffer.wrap(bytes));
+                if (dumpedClasses != null) {
+                    synchronized (dumpedClasses) {
+                        dumpedClasses.put(filename, bytes);
                     }
                 }
+                return classFile;
             } catch (IOException e) {
-                System.out.println(String.format("Error while loading '%s': %s", jarPath, e.toString()));
+                System.out.println(String.format("Error while loading '%s': %s", jar.getPath(), e.toString()));
             }
-            throw new RuntimeException(String.format("Failed to load '%s' from '%s'", filename, jarPath));
+            throw new RuntimeException(String.format("Failed to load '%s' from '%s'", filename, jar.getPath()));
         }
 
-        for (String classPath : classPaths) {
-            String filepath = classPath + "/" + filename;
-            if (new File(filepath).exists()) {
+        Map<String, ClassPathEntry> entryByClass = getEntryByClass();
+        if (entryByClass.containsKey(filename)) {
+            ClassPathEntry entry = entryByClass.get(filename);
+            try {
+                if (entry instanceof ClassPathJar) { // CRC32 is known without reading the entry
+                    ClassPathJar.Entry jarEntry = ((ClassPathJar)entry).getEntry(filename);
+                    ClassFileCache.Key key = new ClassFileCache.Key(entry.getPath(), filename, Integer.toUnsignedLong(jarEntry.getCrc()));
+                    ClassFile classFile = classFileCache.get(key);
+                    return (classFile != null ? classFile : parse(key, ByteBuffer.wrap(((ClassPathJar)entry).read(jarEntry))));
+                }
+
+                byte[] bytes = entry.read(filename);
+                CRC32 crc = new CRC32();
+                crc.update(bytes);
+                ClassFileCache.Key key = new ClassFileCache.Key(entry.getPath(), filename, crc.getValue());
+                ClassFile classFile = classFileCache.get(key);
+                return (classFile != null ? classFile : parse(key, ByteBuffer.wrap(bytes)));
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to open :" + e.getMessage());
+            }
+        }
+
+        missingClasses.add(filename);
+        return null;
+    }
+
+    private synchronized Map<String, ClassPathJar> getJarByClass() {
+        if (jarByClass == null) {
+            jarByClass = new HashMap<>();
+            if (bootImage == null) {
+                setupBootstrapSearchPath(jarByClass);
+            }
+        }
+        return jarByClass;
+    }
+
+    private synchronized Map<String, ClassPathEntry> getEntryByClass() {
+        if (entryByClass == null) {
+            entryByClass = new HashMap<>();
+            setupUserSearchPath(entryByClass);
+        }
+        return entryByClass;
+    }
+
+    private ClassFile parse(ClassFileCache.Key key, ByteBuffer buffer) {
+        long start = System.nanoTime();
+        ClassFile classFile;
+        try {
+            classFile = new ClassFileParser(ClassFileParser.Profile.Lean).parse(buffer);
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Failed to parse '%s': %s", key.getFilename(), e.toString()));
+        }
+        if (statistics != null) {
+            String filename = key.getFilename();
+            statistics.recordParse(filename.substring(0, filename.length() - ".class".length()), key.getSource(),
+                    buffer.remaining(), System.nanoTime() - start);
+        }
+        classFileCache.put(key, classFile);
+        return classFile;
+    }
+
+    // Stop prefetching, and close jars and directories in the class search paths. Classes must not be
+    // loaded after this.
+    void close() {
+        if (prefetcher != null) {
+            prefetcher.shutdown(); // before closing jars it may be reading, and outside the lock it may wait for
+        }
+        synchronized (this) {
+            for (ClassPathEntry entry : openedEntries) {
                 try {
-                    return new ClassFileParser().parse(filepath);
+                    entry.close();
                 } catch (IOException e) {
-                    throw new RuntimeException("Failed to open :" + e.getMessage());
+                    System.err.println(String.format("Failed to close '%s': %s", entry.getPath(), e.toString()));
                 }
             }
+            openedEntries.clear();
         }
+    }
 
-        throw new RuntimeException(String.format("Class '%s' was not found in classpath", klass));
+    // Write bootstrap classes loaded so far to the shared class archive. Used by ShareMode.DUMP.
+    void dumpSharedArchive() {
+        synchronized (dumpedClasses) {
+            dumpedClasses.keySet().retainAll(loadedClasses);
+            try {
+                SharedClassArchive.dump(sharedArchiveFile(), SharedClassArchive.bootstrapIdentity(bootClassPath), dumpedClasses);
+            } catch (IOException e) {
+                System.err.println(String.format("Failed to dump shared class archive '%s': %s", sharedArchiveFile(), e.toString()));
+            }
+        }
     }
 
-    private void setupBootstrapSearchPath(Map<String, String> jarByClass) {
-        String bootclasspath = System.getProperty("sun.boot.class.path"); // java.class.path in Java 9+
-
-        for (String jarPath : bootclasspath.split(":")) {
-            try (ZipInputStream jarStream = new ZipInputStream(new FileInputStream(jarPath))) {
-                ZipEntry entry;
-                while ((entry = jarStream.getNextEntry()) != null) {
-                    if (entry.getName().endsWith(".class")) {
-                        if (jarByClass.containsKey(entry.getName())) {
-                            throw new RuntimeException(String.format("'%s' exists in both '%s' and '%s'",
-                                    entry.getName(), jarByClass.get(entry.getName()), jarPath));
-                        }
-                        jarByClass.put(entry.getName(), jarPath);
+    private File sharedArchiveFile() {
+        return new File(CACHE_DIRECTORY, String.format("classes-%08x.jsa", bootClassPath.hashCode()));
+    }
+
+    // Jars are kept open, and their class entries are read from BootstrapClassIndex on warm starts.
+    private void setupBootstrapSearchPath(Map<String, ClassPathJar> jarByClass) {
+        File indexFile = new File(CACHE_DIRECTORY, String.format("bootstrap-%08x.idx", bootClassPath.hashCode()));
+
+        for (ClassPathJar jar : new BootstrapClassIndex(indexFile).openJars(bootClassPath.split(":"))) {
+            openedEntries.add(jar);
+            for (String name : jar.getEntryNames()) {
+                if (name.endsWith(".class")) {
+                    if (jarByClass.containsKey(name)) {
+                        throw new RuntimeException(String.format("'%s' exists in both '%s' and '%s'",
+                                name, jarByClass.get(name).getPath(), jar.getPath()));
                     }
+                    jarByClass.put(name, jar);
+                }
+            }
+        }
+    }
+
+    // Jars in -cp are indexed like bootstrap jars, and directories are listed once. Classes in
+    // earlier entries take precedence.
+    private void setupUserSearchPath(Map<String, ClassPathEntry> entryByClass) {
+        String[] paths = classPath.split(":");
+        List<String> jarPaths = new ArrayList<>();
+        for (String path : paths) {
+            if (new File(path).isFile()) {
+                jarPaths.add(path);
+            }
+        }
+        File indexFile = new File(CACHE_DIRECTORY, String.format("classpath-%08x.idx", classPath.hashCode()));
+        Map<String, ClassPathJar> jarByPath = new HashMap<>();
+        for (ClassPathJar jar : new BootstrapClassIndex(indexFile).openJars(jarPaths.toArray(new String[0]))) {
+            jarByPath.put(jar.getPath(), jar);
+            openedEntries.add(jar);
+        }
+
+        for (String path : paths) {
+            ClassPathEntry entry = jarByPath.get(path);
+            if (entry == null && new File(path).isDirectory()) {
+                try {
+                    entry = new ClassPathDirectory(path);
+                    openedEntries.add(entry);
+                } catch (IOException e) {
+                    System.out.println(String.format("Error while loading '%s': %s", path, e.toString()));
+                }
+            }
+            if (entry == null) {
+                continue;
+            }
+            for (String name : entry.getEntryNames()) {
+                if (name.endsWith(".class")) {
+                    entryByClass.putIfAbsent(name, entry);
                 }
-            } catch (FileNotFoundException e) {
-                // expected for "jre/lib/sunrsasign.jar" and "jre/classes"
-            } catch (IOException e) {
-                System.out.println(String.format("Error while loading '%s': %s", jarPath, e.toString()));
             }
         }
     }
@@ -0,0 +1,60 @@
+package com.github.k0kubun.jjvm.virtualmachine;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
+import java.util.Set;
+
+// A directory in a class search path. Class files under it are listed once on open, so that
+// resolving a class doesn't stat() the directory again. Unreadable subdirectories are skipped like javac
+// and HotSpot do.
+class ClassPathDirectory implements ClassPathEntry {
+    private final String path;
+    private final Set<String> entryNames;
+
+    ClassPathDirectory(String path) throws IOException {
+        this.path = path;
+        this.entryNames = new HashSet<>();
+
+        Path root = new File(path).toPath();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (file.toString().endsWith(".class") && Files.isRegularFile(file)) {
+                    entryNames.add(root.relativize(file).toString().replace(File.separatorChar, '/'));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Override
+    public String getPath() {
+        return path;
+    }
+
+    @Override
+    public Set<String> getEntryNames() {
+        return entryNames;
+    }
+
+    @Override
+    public byte[] read(String name) throws IOException {
+        return Files.readAllBytes(new File(path, name).toPath());
+    }
+
+    @Override
+    public void close() {
+        // nothing is kept open
+    }
+}
@@ -0,0 +1,16 @@
+package com.github.k0kubun.jjvm.virtualmachine;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Set;
+
+// An element of a class search path: a jar (ClassPathJar) or a directory (ClassPathDirectory).
+// Closed by ClassLoader.close() when the VM is finished.
+interface ClassPathEntry extends Closeable {
+    String getPath();
+
+    // Names of all files in the entry, like "java/lang/Object.class".
+    Set<String> getEntryNames();
+
+    byte[] read(String name) throws IOException;
+}
@@ -0,0 +1,309 @@
+package com.github.k0kubun.jjvm.virtualmachine;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+// A jar file which is kept open for random access. The central directory is read once on open,
+// and each entry is read by seeking straight to its local file header. The whole file is mapped
+// to memory unless it's too large for a single MappedByteBuffer.
+// https://pkware.cachefly.net/webdocs/casestudies/APPNOTE.TXT
+class ClassPathJar implements ClassPathEntry {
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+
+    private final String path;
+    private final long size;
+    private final long lastModified;
+    private final FileChannel channel;
+    private ByteBuffer mapped; // null if the file is not mapped or closed
+    private final Map<String, Entry> entries;
+
+    ClassPathJar(String path) throws IOException {
+        this(path, null);
+    }
+
+    // Open a jar whose entries are already known, e.g. from BootstrapClassIndex. The central
+    // directory is read only when `entries` is null.
+    ClassPathJar(String path, Map<String, Entry> entries) throws IOException {
+        this.path = path;
+        this.lastModified = new File(path).lastModified();
+        this.channel = new RandomAccessFile(path, "r").getChannel(); // FileNotFoundException if missing
+        this.size = channel.size();
+        if (size <= Integer.MAX_VALUE) {
+            this.mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+        } else {
+            this.mapped = null;
+        }
+        this.entries = (entries != null ? entries : readCentralDirectory(size));
+    }
+
+    @Override
+    public String getPath() {
+        return path;
+    }
+
+    long getSize() {
+        return size;
+    }
+
+    long getLastModified() {
+        return lastModified;
+    }
+
+    Map<String, Entry> getEntries() {
+        return entries;
+    }
+
+    @Override
+    public Set<String> getEntryNames() {
+        return entries.keySet();
+    }
+
+    Entry getEntry(String name) {
+        return entries.get(name);
+    }
+
+    @Override
+    public byte[] read(String name) throws IOException {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            throw new IOException(String.format("'%s' was not found in '%s'", name, path));
+        }
+        return read(entry);
+    }
+
+    // Java has no API to unmap a MappedByteBuffer, so the mapping is released once the buffer, and
+    // buffers returned by read(), become unreachable.
+    @Override
+    public void close() throws IOException {
+        mapped = null;
+        channel.close();
+    }
+
+    // local file header {
+    //     u4 signature;
+    //     u2 version_needed;
+    //     u2 flags;
+    //     u2 compression_method;
+    //     u2 last_mod_time;
+    //     u2 last_mod_date;
+    //     u4 crc32;
+    //     u4 compressed_size;
+    //     u4 uncompressed_size;
+    //     u2 file_name_length;
+    //     u2 extra_field_length;
+    //     u1 file_name[file_name_length];
+    //     u1 extra_field[extra_field_length];
+    // }
+    byte[] read(Entry entry) throws IOException {
+        ByteBuffer header = readBytes(entry.getLocalHeaderOffset(), 30);
+        if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            throw new IOException(String.format("broken local file header for '%s' in '%s'", entry.getName(), path));
+        }
+        long dataOffset = entry.getLocalHeaderOffset() + 30
+                + Short.toUnsignedInt(header.getShort(26)) + Short.toUnsignedInt(header.getShort(28));
+
+        byte[] compressed = new byte[entry.getCompressedSize()];
+        readBytes(dataOffset, compressed.length).get(compressed);
+
+        byte[] bytes;
+        if (entry.getMethod() == METHOD_STORED) {
+            bytes = compressed;
+        } else if (entry.getMethod() == METHOD_DEFLATED) {
+            bytes = inflate(entry, compressed);
+        } else {
+            throw new IOException(String.format("unsupported compression method %d for '%s' in '%s'",
+                    entry.getMethod(), entry.getName(), path));
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        if ((int)crc.getValue() != entry.getCrc()) {
+            throw new IOException(String.format("CRC mismatch for '%s' in '%s'", entry.getName(), path));
+        }
+        return bytes;
+    }
+
+    private byte[] inflate(Entry entry, byte[] compressed) throws IOException {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed);
+            byte[] bytes = new byte[entry.getUncompressedSize()];
+            int length = 0;
+            while (length < bytes.length && !inflater.finished()) {
+                int inflated = inflater.inflate(bytes, length, bytes.length - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != bytes.length) {
+                throw new IOException(String.format("truncated entry '%s' in '%s'", entry.getName(), path));
+            }
+            return bytes;
+        } catch (DataFormatException e) {
+            throw new IOException(String.format("broken entry '%s' in '%s': %s", entry.getName(), path, e.getMessage()));
+        } finally {
+            inflater.end();
+        }
+    }
+
+    // end of central directory record {
+    //     u4 signature;
+    //     u2 disk_number;
+    //     u2 central_directory_disk;
+    //     u2 disk_entries;
+    //     u2 total_entries;
+    //     u4 central_directory_size;
+    //     u4 central_directory_offset;
+    //     u2 comment_length;
+    //     u1 comment[comment_length];
+    // }
+    private Map<String, Entry> readCentralDirectory(long size) throws IOException {
+        // The record is at the end of the file, followed by a comment of at most 65535 bytes.
+        int tailSize = (int)Math.min(size, END_OF_CENTRAL_DIRECTORY_SIZE + 0xffff);
+        ByteBuffer tail = readBytes(size - tailSize, tailSize);
+        int end = -1;
+        for (int i = tailSize - END_OF_CENTRAL_DIRECTORY_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+                end = i;
+                break;
+            }
+        }
+        if (end == -1) {
+            throw new IOException(String.format("end of central directory was not found in '%s'", path));
+        }
+
+        int totalEntries = Short.toUnsignedInt(tail.getShort(end + 10));
+        long directorySize = Integer.toUnsignedLong(tail.getInt(end + 12));
+        long directoryOffset = Integer.toUnsignedLong(tail.getInt(end + 16));
+        if (totalEntries == 0xffff || directoryOffset == 0xffffffffL) {
+            throw new IOException(String.format("ZIP64 is not supported: '%s'", path));
+        }
+
+        // central directory file header {
+        //     u4 signature;
+        //     u2 version_made_by;
+        //     u2 version_needed;
+        //     u2 flags;
+        //     u2 compression_method;
+        //     u2 last_mod_time;
+        //     u2 last_mod_date;
+        //     u4 crc32;
+        //     u4 compressed_size;
+        //     u4 uncompressed_size;
+        //     u2 file_name_length;
+        //     u2 extra_field_length;
+        //     u2 file_comment_length;
+        //     u2 disk_number_start;
+        //     u2 internal_file_attributes;
+        //     u4 external_file_attributes;
+        //     u4 local_header_offset;
+        //     u1 file_name[file_name_length];
+        //     u1 extra_field[extra_field_length];
+        //     u1 file_comment[file_comment_length];
+        // }
+        ByteBuffer directory = readBytes(directoryOffset, (int)directorySize);
+        Map<String, Entry> entries = new HashMap<>(totalEntries * 4 / 3 + 1);
+        int pos = 0;
+        for (int i = 0; i < totalEntries; i++) {
+            if (directory.getInt(pos) != CENTRAL_HEADER_SIGNATURE) {
+                throw new IOException(String.format("broken central directory in '%s'", path));
+            }
+            int method = Short.toUnsignedInt(directory.getShort(pos + 10));
+            int crc = directory.getInt(pos + 16);
+            int compressedSize = directory.getInt(pos + 20);
+            int uncompressedSize = directory.getInt(pos + 24);
+            int nameLength = Short.toUnsignedInt(directory.getShort(pos + 28));
+            int extraLength = Short.toUnsignedInt(directory.getShort(pos + 30));
+            int commentLength = Short.toUnsignedInt(directory.getShort(pos + 32));
+            long localHeaderOffset = Integer.toUnsignedLong(directory.getInt(pos + 42));
+
+            byte[] nameBytes = new byte[nameLength];
+            directory.position(pos + 46);
+            directory.get(nameBytes);
+            String name = new String(nameBytes, StandardCharsets.UTF_8);
+            entries.put(name, new Entry(name, method, crc, compressedSize, uncompressedSize, localHeaderOffset));
+
+            pos += 46 + nameLength + extraLength + commentLength;
+        }
+        return entries;
+    }
+
+    // Returns a little-endian buffer whose position 0 is at `offset` of the file.
+    private ByteBuffer readBytes(long offset, int length) throws IOException {
+        ByteBuffer mapped = this.mapped; // not to see null after the check
+        if (mapped != null) {
+            ByteBuffer buffer = mapped.duplicate(); // for thread safety of position/limit
+            buffer.position((int)offset);
+            buffer.limit((int)offset + length);
+            return buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException(String.format("unexpected EOF in '%s'", path));
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    static class Entry {
+        private final String name;
+        private final int method;
+        private final int crc;
+        private final int compressedSize;
+        private final int uncompressedSize;
+        private final long localHeaderOffset;
+
+        Entry(String name, int method, int crc, int compressedSize, int uncompressedSize, long localHeaderOffset) {
+            this.name = name;
+            this.method = method;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.uncompressedSize = uncompressedSize;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        int getMethod() {
+            return method;
+        }
+
+        int getCrc() {
+            return crc;
+        }
+
+        int getCompressedSize() {
+            return compressedSize;
+        }
+
+        int getUncompressedSize() {
+            return uncompressedSize;
+        }
+
+        long getLocalHeaderOffset() {
+            return localHeaderOffset;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.github.k0kubun.jjvm.virtualmachine;
+
+import com.github.k0kubun.jjvm.classfile.ClassFile;
+import com.github.k0kubun.jjvm.classfile.ConstantInfo;
+import com.github.k0kubun.jjvm.classfile.ConstantPool;
+import com.github.k0kubun.jjvm.classfile.ConstantType;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+// Speculatively locates and parses classes referenced by the constant pool of a loaded class on
+// background threads, so that I/O and parsing overlap with interpretation. Only direct references
+// of classes actually loaded by the VM are prefetched, not the transitive closure.
+class ClassPrefetcher {
+    // Referenced classes are often never loaded, and their futures would stay in `pendingClasses`.
+    private static final int MAX_PENDING_CLASSES = 256;
+
+    private final Function<String, ClassFile> finder;
+    private final ExecutorService executor;
+    private final Map<String, Future<ClassFile>> pendingClasses;
+    private final Set<String> requestedClasses;
+
+    // `finder` must be thread-safe and return null for a missing class.
+    ClassPrefetcher(Function<String, ClassFile> finder) {
+        this.finder = finder;
+        this.executor = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1)),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "jjvm-class-prefetcher");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.pendingClasses = new ConcurrentHashMap<>();
+        this.requestedClasses = ConcurrentHashMap.newKeySet();
+    }
+
+    // Schedule classes referenced by ConstantInfo.Class, which also covers the classes of
+    // Fieldref, Methodref and InterfaceMethodref.
+    void prefetchReferences(ClassFile classFile) {
+        requestedClasses.add(classFile.getThisClassName());
+        ConstantPool constantPool = classFile.getConstantPool();
+        for (int i = 1; i <= constantPool.getCount(); i++) {
+            if (constantPool.getType(i) == ConstantType.Class) {
+                String name = ((ConstantInfo.Class)constantPool.get(i)).getName();
+                if (!name.startsWith("[") && requestedClasses.add(name)) {
+                    if (pendingClasses.size() >= MAX_PENDING_CLASSES && !evictCompleted()) {
+                        requestedClasses.remove(name); // maybe prefetched from another class later
+                        continue;
+                    }
+                    pendingClasses.put(name, executor.submit(() -> finder.apply(name)));
+                }
+            }
+        }
+    }
+
+    // Returns a prefetched class, waiting for it if it's still being parsed. Returns null if `klass`
+    // has not been prefetched or prefetching it failed.
+    ClassFile take(String klass) {
+        requestedClasses.add(klass);
+        Future<ClassFile> future = pendingClasses.remove(klass);
+        if (future == null) {
+            return null;
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException | ExecutionException e) {
+            return null; // retried by the caller on the VM thread
+        }
+    }
+
+    // Drop prefetched classes which are not taken yet, and wait for running tasks. Parsed classes stay in
+    // ClassFileCache. Threads are not interrupted, since it would close the FileChannel they are reading.
+    void shutdown() {
+        for (Future<ClassFile> future : pendingClasses.values()) {
+            future.cancel(false);
+        }
+        pendingClasses.clear();
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Remove completed futures, whose classes are in ClassFileCache anyway. false if none is removed.
+    private boolean evictCompleted() {
+        boolean evicted = false;
+        Iterator<Future<ClassFile>> futures = pendingClasses.values().iterator();
+        while (futures.hasNext()) {
+            if (futures.next().isDone()) {
+                futures.remove();
+                evicted = true;
+            }
+        }
+        return evicted;
+    }
+}
@@ -0,0 +1,263 @@
+package com.github.k0kubun.jjvm.virtualmachine;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+// The "lib/modules" jimage file of Java 9+, which replaces rt.jar and friends. It's mapped read-only,
+// and a resource is found by the perfect hash table in its index without any scan.
+// See jdk.internal.jimage.BasicImageReader in OpenJDK.
+class JImage {
+    // image {
+    //     header   header;
+    //     s4       redirect[table_length];
+    //     u4       offsets[table_length]; // to locations
+    //     u1       locations[locations_size];
+    //     u1       strings[strings_size];
+    //     u1       resources[];
+    // }
+    // header { // in the native byte order
+    //     u4       magic;
+    //     u2       minor_version; u2 major_version;
+    //     u4       flags;
+    //     u4       resource_count;
+    //     u4       table_length;
+    //     u4       locations_size;
+    //     u4       strings_size;
+    // }
+    private static final int MAGIC = 0xcafedada;
+    private static final int MAJOR_VERSION = 1;
+    private static final int HEADER_SIZE = 28;
+    private static final int HASH_MULTIPLIER = 0x01000193;
+
+    // location attribute kinds
+    private static final int ATTRIBUTE_END = 0;
+    private static final int ATTRIBUTE_MODULE = 1;
+    private static final int ATTRIBUTE_PARENT = 2;
+    private static final int ATTRIBUTE_BASE = 3;
+    private static final int ATTRIBUTE_EXTENSION = 4;
+    private static final int ATTRIBUTE_OFFSET = 5;
+    private static final int ATTRIBUTE_COMPRESSED = 6;
+    private static final int ATTRIBUTE_UNCOMPRESSED = 7;
+    private static final int ATTRIBUTE_COUNT = 8;
+
+    // compressed_resource_header {
+    //     u4 magic;
+    //     u8 compressed_size;
+    //     u8 uncompressed_size;
+    //     u4 decompressor_name_offset; // to strings
+    //     u4 content_offset;
+    //     u1 is_terminal;
+    // }
+    private static final int COMPRESSED_MAGIC = 0xcafefafa;
+    private static final int COMPRESSED_HEADER_SIZE = 29;
+
+    private final String path;
+    private final ByteBuffer mapping;
+    private final int tableLength;
+    private final int redirectOffset;
+    private final int offsetsOffset;
+    private final int locationsOffset;
+    private final int stringsOffset;
+    private final int resourcesOffset;
+    private final Map<String, String> moduleByPackage;
+
+    JImage(String path) throws IOException {
+        this.path = path;
+        try (FileChannel channel = new RandomAccessFile(path, "r").getChannel()) {
+            mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        mapping.order(ByteOrder.nativeOrder());
+        if (mapping.getInt(0) != MAGIC) {
+            throw new IOException("Not a jimage file: " + path);
+        }
+        if ((mapping.getInt(4) >>> 16) != MAJOR_VERSION) {
+            throw new IOException(String.format("Unsupported jimage version %d: %s", mapping.getInt(4) >>> 16, path));
+        }
+
+        tableLength = mapping.getInt(16);
+        redirectOffset = HEADER_SIZE;
+        offsetsOffset = redirectOffset + tableLength * 4;
+        locationsOffset = offsetsOffset + tableLength * 4;
+        stringsOffset = locationsOffset + mapping.getInt(20);
+        resourcesOffset = stringsOffset + mapping.getInt(24);
+        moduleByPackage = new ConcurrentHashMap<>();
+    }
+
+    String getPath() {
+        return path;
+    }
+
+    // Returns a read-only buffer of a classfile like "java/lang/Object.class", or null if it's missing.
+    ByteBuffer findClass(String filename) throws IOException {
+        int slash = filename.lastIndexOf('/');
+        String packageName = (slash == -1 ? "" : filename.substring(0, slash).replace('/', '.'));
+        String module = moduleByPackage.get(packageName);
+        if (module == null) {
+            module = findModule(packageName);
+            if (module == null) {
+                return null;
+            }
+            moduleByPackage.put(packageName, module);
+        }
+
+        long[] attributes = findLocation(String.format("/%s/%s", module, filename));
+        return (attributes == null ? null : readResource(attributes));
+    }
+
+    // "/packages/<package>" holds pairs of (is_empty, module_name_offset), in the native byte order.
+    private String findModule(String packageName) throws IOException {
+        long[] attributes = findLocation("/packages/" + packageName);
+        if (attributes == null) {
+            return null;
+        }
+        ByteBuffer modules = readResource(attributes).order(ByteOrder.nativeOrder());
+        for (int i = 0; i + 8 <= modules.limit(); i += 8) {
+            if (modules.getInt(i) == 0) {
+                return getString(modules.getInt(i + 4));
+            }
+        }
+        return null;
+    }
+
+    // Returns the attributes of the location named `name`, or null if it doesn't exist.
+    private long[] findLocation(String name) {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        int index = mapping.getInt(redirectOffset + 4 * (hash(nameBytes, HASH_MULTIPLIER) % tableLength));
+        if (index < 0) {
+            index = -index - 1; // no collision in this bucket
+        } else if (index > 0) {
+            index = hash(nameBytes, index) % tableLength; // index is the seed to rehash
+        } else {
+            return null;
+        }
+
+        long[] attributes = decompressLocation(locationsOffset + mapping.getInt(offsetsOffset + 4 * index));
+        return (name.equals(locationName(attributes)) ? attributes : null); // the table is for existing names only
+    }
+
+    private long[] decompressLocation(int offset) {
+        long[] attributes = new long[ATTRIBUTE_COUNT];
+        while (true) {
+            int data = mapping.get(offset++) & 0xff;
+            int kind = data >>> 3;
+            if (kind == ATTRIBUTE_END) {
+                break;
+            }
+            if (kind >= ATTRIBUTE_COUNT) {
+                throw new RuntimeException(String.format("Invalid jimage location attribute %d in '%s'", kind, path));
+            }
+            int length = (data & 0x7) + 1;
+            long value = 0;
+            for (int i = 0; i < length; i++) {
+                value = (value << 8) | (mapping.get(offset++) & 0xff);
+            }
+            attributes[kind] = value;
+        }
+        return attributes;
+    }
+
+    // "/module/parent/base.extension", where empty parts are omitted with their separators
+    private String locationName(long[] attributes) {
+        StringBuilder builder = new StringBuilder();
+        String module = getString((int)attributes[ATTRIBUTE_MODULE]);
+        if (!module.isEmpty()) {
+            builder.append('/').append(module).append('/');
+        }
+        String parent = getString((int)attributes[ATTRIBUTE_PARENT]);
+        if (!parent.isEmpty()) {
+            builder.append(parent).append('/');
+        }
+        builder.append(getString((int)attributes[ATTRIBUTE_BASE]));
+        String extension = getString((int)attributes[ATTRIBUTE_EXTENSION]);
+        if (!extension.isEmpty()) {
+            builder.append('.').append(extension);
+        }
+        return builder.toString();
+    }
+
+    private ByteBuffer readResource(long[] attributes) throws IOException {
+        int offset = resourcesOffset + (int)attributes[ATTRIBUTE_OFFSET];
+        long compressedSize = attributes[ATTRIBUTE_COMPRESSED];
+        if (compressedSize == 0) {
+            return slice(offset, (int)attributes[ATTRIBUTE_UNCOMPRESSED]);
+        }
+
+        // Created by `jlink --compress`. Resources may be compressed repeatedly.
+        byte[] bytes = new byte[(int)compressedSize];
+        ByteBuffer compressed = slice(offset, bytes.length);
+        compressed.get(bytes);
+        while (bytes.length >= COMPRESSED_HEADER_SIZE && header(bytes).getInt(0) == COMPRESSED_MAGIC) {
+            ByteBuffer header = header(bytes);
+            String decompressor = getString(header.getInt(20));
+            if (!decompressor.equals("zip")) {
+                throw new IOException(String.format("Unsupported jimage decompressor '%s' in '%s'", decompressor, path));
+            }
+            bytes = inflate(bytes, COMPRESSED_HEADER_SIZE, (int)header.getLong(4), (int)header.getLong(12));
+        }
+        return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+    }
+
+    private byte[] inflate(byte[] bytes, int offset, int length, int uncompressedSize) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes, offset, length);
+            byte[] uncompressed = new byte[uncompressedSize];
+            int inflated = 0;
+            while (inflated < uncompressedSize && !inflater.finished()) {
+                int n = inflater.inflate(uncompressed, inflated, uncompressedSize - inflated);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflated += n;
+            }
+            if (inflated != uncompressedSize) {
+                throw new IOException(String.format("Truncated jimage resource in '%s'", path));
+            }
+            return uncompressed;
+        } catch (DataFormatException e) {
+            throw new IOException(String.format("Broken jimage resource in '%s': %s", path, e.getMessage()));
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private ByteBuffer header(byte[] bytes) {
+        return ByteBuffer.wrap(bytes, 0, COMPRESSED_HEADER_SIZE).order(ByteOrder.nativeOrder());
+    }
+
+    private ByteBuffer slice(int offset, int length) {
+        ByteBuffer buffer = mapping.duplicate();
+        buffer.position(offset);
+        buffer.limit(offset + length);
+        return buffer.slice().asReadOnlyBuffer();
+    }
+
+    // A NUL-terminated string in the strings area
+    private String getString(int offset) {
+        int start = stringsOffset + offset;
+        int end = start;
+        while (mapping.get(end) != 0) {
+            end++;
+        }
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = mapping.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int hash(byte[] bytes, int seed) {
+        for (byte b : bytes) {
+            seed = (seed * HASH_MULTIPLIER) ^ (b & 0xff);
+        }
+        return seed & 0x7fffffff;
+    }
+}
@@ -0,0 +1,219 @@
+package com.github.k0kubun.jjvm.virtualmachine;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Map;
+
+// A single file holding the classfile images loaded from the bootstrap search path, like HotSpot's
+// CDS archive. It's created by -Xjjvmshare:dump and mapped read-only by -Xjjvmshare:on, so that
+// classes are materialized straight from the mapping without touching jars.
+class SharedClassArchive {
+    // archive {
+    //     u4    magic;
+    //     u4    version;
+    //     u4    identity_length;
+    //     u1    identity[identity_length]; // see bootstrapIdentity()
+    //     u4    classes_count;
+    //     entry entries[classes_count]; // sorted by name bytes
+    //     u1    names[];
+    //     u1    classfiles[];
+    // }
+    // entry {
+    //     u4    name_offset; // from the beginning of the archive
+    //     u4    name_length;
+    //     u4    classfile_offset;
+    //     u4    classfile_length;
+    // }
+    private static final int MAGIC = 0x4a4a5341; // "JJSA"
+    private static final int VERSION = 1;
+    private static final int ENTRY_SIZE = 16;
+
+    private final String identity;
+    private final ByteBuffer mapping;
+    private final int classesCount;
+    private final int entriesOffset;
+
+    private SharedClassArchive(String identity, ByteBuffer mapping, int classesCount, int entriesOffset) {
+        this.identity = identity;
+        this.mapping = mapping;
+        this.classesCount = classesCount;
+        this.entriesOffset = entriesOffset;
+    }
+
+    // Returns null if the archive doesn't exist, was dumped for other bootstrap jars, or is truncated.
+    static SharedClassArchive open(File file, String identity) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+
+        ByteBuffer mapping;
+        try (FileChannel channel = new RandomAccessFile(file, "r").getChannel()) {
+            mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        long limit = mapping.limit();
+        if (limit < 12 || mapping.getInt(0) != MAGIC || mapping.getInt(4) != VERSION) {
+            return null;
+        }
+
+        int identityLength = mapping.getInt(8);
+        if (identityLength < 0 || 12L + identityLength + 4 > limit) {
+            return null;
+        }
+        byte[] identityBytes = new byte[identityLength];
+        ByteBuffer header = mapping.duplicate();
+        header.position(12);
+        header.get(identityBytes);
+        if (!new String(identityBytes, StandardCharsets.UTF_8).equals(identity)) {
+            return null;
+        }
+
+        int classesCount = header.getInt();
+        int entriesOffset = header.position();
+        if (classesCount < 0 || entriesOffset + (long)classesCount * ENTRY_SIZE > limit) {
+            return null;
+        }
+        for (int i = 0; i < classesCount; i++) {
+            int entry = entriesOffset + i * ENTRY_SIZE;
+            if (!isInRange(mapping.getInt(entry), mapping.getInt(entry + 4), limit)
+                    || !isInRange(mapping.getInt(entry + 8), mapping.getInt(entry + 12), limit)) {
+                return null;
+            }
+        }
+        return new SharedClassArchive(identity, mapping, classesCount, entriesOffset);
+    }
+
+    private static boolean isInRange(int offset, int length, long limit) {
+        return offset >= 0 && length >= 0 && (long)offset + length <= limit;
+    }
+
+    // Write `classes` (filename => classfile) to `file`.
+    static void dump(File file, String identity, Map<String, byte[]> classes) throws IOException {
+        String[] names = classes.keySet().toArray(new String[0]);
+        byte[][] nameBytes = new byte[names.length][];
+        for (int i = 0; i < names.length; i++) {
+            nameBytes[i] = names[i].getBytes(StandardCharsets.UTF_8);
+        }
+        Integer[] order = new Integer[names.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> compareBytes(nameBytes[a], nameBytes[b]));
+
+        byte[] identityBytes = identity.getBytes(StandardCharsets.UTF_8);
+        int namesOffset = 16 + identityBytes.length + ENTRY_SIZE * names.length;
+        int classfilesOffset = namesOffset;
+        for (byte[] name : nameBytes) {
+            classfilesOffset += name.length;
+        }
+
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Failed to create directory: " + directory);
+        }
+        File tempFile = File.createTempFile(file.getName(), ".tmp", directory);
+        try (DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            stream.writeInt(MAGIC);
+            stream.writeInt(VERSION);
+            stream.writeInt(identityBytes.length);
+            stream.write(identityBytes);
+            stream.writeInt(names.length);
+
+            int nameOffset = namesOffset;
+            int classfileOffset = classfilesOffset;
+            for (int i : order) {
+                int classfileLength = classes.get(names[i]).length;
+                stream.writeInt(nameOffset);
+                stream.writeInt(nameBytes[i].length);
+                stream.writeInt(classfileOffset);
+                stream.writeInt(classfileLength);
+                nameOffset += nameBytes[i].length;
+                classfileOffset += classfileLength;
+            }
+            for (int i : order) {
+                stream.write(nameBytes[i]);
+            }
+            for (int i : order) {
+                stream.write(classes.get(names[i]));
+            }
+        } catch (IOException e) {
+            tempFile.delete();
+            throw e;
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    String getIdentity() {
+        return identity;
+    }
+
+    // Returns the offset of the entry for the classfile, or -1 if it's not archived. It identifies the
+    // classfile as long as the identity of the archive is the same.
+    int findEntry(String filename) {
+        byte[] name = filename.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = classesCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int entry = entriesOffset + mid * ENTRY_SIZE;
+            int cmp = compareName(mapping.getInt(entry), mapping.getInt(entry + 4), name);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    // Returns a read-only slice of the mapping holding the classfile of an entry from findEntry().
+    ByteBuffer getClassfile(int entry) {
+        ByteBuffer classfile = mapping.duplicate();
+        classfile.position(mapping.getInt(entry + 8));
+        classfile.limit(mapping.getInt(entry + 8) + mapping.getInt(entry + 12));
+        return classfile.slice().asReadOnlyBuffer();
+    }
+
+    // The archive is valid only for the same bootstrap jars with the same sizes and mtimes.
+    static String bootstrapIdentity(String bootClassPath) {
+        StringBuilder builder = new StringBuilder();
+        for (String path : bootClassPath.split(":")) {
+            File file = new File(path);
+            builder.append(String.format("%s:%d:%d\n", path, file.length(), file.lastModified()));
+        }
+        return builder.toString();
+    }
+
+    private int compareName(int offset, int length, byte[] name) {
+        int n = Math.min(length, name.length);
+        for (int i = 0; i < n; i++) {
+            int cmp = Integer.compare(mapping.get(offset + i) & 0xff, name[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return Integer.compare(length, name.length);
+    }
+
+    private static int compareBytes(byte[] a, byte[] b) {
+        int n = Math.min(a.length, b.length);
+        for (int i = 0; i < n; i++) {
+            int cmp = Integer.compare(a[i] & 0xff, b[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return Integer.compare(a.length, b.length);
+    }
+}
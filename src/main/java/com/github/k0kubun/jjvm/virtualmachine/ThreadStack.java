@@ -0,0 +1,230 @@
+package com.github.k0kubun.jjvm.virtualmachine;
+
+import com.github.k0kubun.jjvm.classfile.AttributeInfo;
+import com.github.k0kubun.jjvm.classfile.ConstantPool;
+import com.github.k0kubun.jjvm.classfile.FieldType;
+import com.github.k0kubun.jjvm.classfile.MethodInfo;
+
+import java.util.Arrays;
+import java.util.List;
+
+// The stack of a thread. Frames are windows of preallocated arrays: the locals of a frame start at its
+// base, and its operand stack follows them. A caller pushes arguments onto its operand stack, and they become
+// the first locals of the callee as they are, without being copied.
+//
+// A slot has both `primitives` and `references`, and which one is used depends on the instruction which
+// accesses it. int, char, short, byte and boolean are stored as int, and float as its raw int bits. As locals
+// and the operand stack of JVMS 2.6, long and double take two slots, and double is stored as its raw long bits.
+// References stay Value to know their classes.
+//
+// Frames of interpreted methods are also kept here instead of the host stack, up to `maxFrames`.
+class ThreadStack {
+    // Enough for thousands of frames of usual methods
+    static final int DEFAULT_SIZE = 256 * 1024;
+
+    private final long[] primitives;
+    private final Value[] references;
+    private int pointer; // the next free slot
+    private final Frame[] frames; // allocated on the first use of each depth, and reused after that
+    private int depth; // the number of frames
+
+    ThreadStack(int size, int maxFrames) {
+        primitives = new long[size];
+        references = new Value[size];
+        pointer = 0;
+        frames = new Frame[maxFrames];
+        depth = 0;
+    }
+
+    long[] getPrimitives() {
+        return primitives;
+    }
+
+    Value[] getReferences() {
+        return references;
+    }
+
+    int getPointer() {
+        return pointer;
+    }
+
+    void setPointer(int pointer) {
+        this.pointer = pointer;
+    }
+
+    int getDepth() {
+        return depth;
+    }
+
+    // Start a frame of `method` whose arguments are already stored from `base`.
+    Frame pushFrame(Value.Class klass, MethodInfo method, int base) {
+        AttributeInfo.Code code = method.getCode();
+        if (depth == frames.length) {
+            throw new RuntimeException(String.format("stack overflow: %d frames are exhausted", frames.length));
+        }
+        if (base + code.getMaxLocals() + code.getMaxStack() > primitives.length) {
+            throw new RuntimeException(String.format("stack overflow: %d slots are exhausted", primitives.length));
+        }
+        if (frames[depth] == null) {
+            frames[depth] = new Frame();
+        }
+        Frame frame = frames[depth++];
+        frame.thisClass = klass;
+        frame.method = method;
+        frame.constantPool = klass.getClassFile().getConstantPool();
+        frame.words = code.getPackedCode().getCode();
+        frame.base = base;
+        frame.pc = 0;
+        pointer = base + code.getMaxLocals();
+        return frame;
+    }
+
+    // Pop the current frame with its arguments, and return the frame under it. null if there is none.
+    // References in its window and in the reused Frame are cleared, so that objects used only by the callee
+    // can be collected.
+    Frame popFrame() {
+        Frame frame = frames[--depth];
+        AttributeInfo.Code code = frame.method.getCode();
+        Arrays.fill(references, frame.base, frame.base + code.getMaxLocals() + code.getMaxStack(), null);
+        pointer = frame.base;
+        frame.thisClass = null;
+        frame.method = null;
+        frame.constantPool = null;
+        frame.words = null;
+        return (depth == 0 ? null : frames[depth - 1]);
+    }
+
+    void pushInt(int value) {
+        primitives[pointer++] = value;
+    }
+
+    int popInt() {
+        return (int)primitives[--pointer];
+    }
+
+    void pushLong(long value) {
+        primitives[pointer] = value;
+        pointer += 2;
+    }
+
+    long popLong() {
+        pointer -= 2;
+        return primitives[pointer];
+    }
+
+    void pushFloat(float value) {
+        primitives[pointer++] = Float.floatToRawIntBits(value);
+    }
+
+    float popFloat() {
+        return Float.intBitsToFloat((int)primitives[--pointer]);
+    }
+
+    void pushDouble(double value) {
+        primitives[pointer] = Double.doubleToRawLongBits(value);
+        pointer += 2;
+    }
+
+    double popDouble() {
+        pointer -= 2;
+        return Double.longBitsToDouble(primitives[pointer]);
+    }
+
+    void pushReference(Value value) {
+        references[pointer++] = value;
+    }
+
+    Value popReference() {
+        return references[--pointer];
+    }
+
+    // `depth` is the number of slots above the reference
+    Value peekReference(int depth) {
+        return references[pointer - 1 - depth];
+    }
+
+    // pop, dup and dup_x1 don't know the type of a slot, so they move both of them.
+    void pop() {
+        pointer--;
+    }
+
+    void dup() {
+        primitives[pointer] = primitives[pointer - 1];
+        references[pointer] = references[pointer - 1];
+        pointer++;
+    }
+
+    void dupX1() {
+        primitives[pointer] = primitives[pointer - 1];
+        references[pointer] = references[pointer - 1];
+        primitives[pointer - 1] = primitives[pointer - 2];
+        references[pointer - 1] = references[pointer - 2];
+        primitives[pointer - 2] = primitives[pointer];
+        references[pointer - 2] = references[pointer];
+        pointer++;
+    }
+
+    // For values from outside of the interpreter, like fields and return values
+    void pushValue(Value value) {
+        FieldType type = value.getType();
+        if (type instanceof FieldType.Long) {
+            pushLong((long)value.getValue());
+        } else if (type instanceof FieldType.Double) {
+            pushDouble((double)value.getValue());
+        } else if (type instanceof FieldType.Float) {
+            pushFloat((float)value.getValue());
+        } else if (type instanceof FieldType.Int || type instanceof FieldType.Short || type instanceof FieldType.Byte
+                || type instanceof FieldType.Char || type instanceof FieldType.Boolean) {
+            pushInt(value.getIntValue());
+        } else {
+            pushReference(value);
+        }
+    }
+
+    // Pop a value to be stored as `type`, like a field or an argument of a native method
+    Value popValue(FieldType type) {
+        if (type instanceof FieldType.Int) {
+            return new Value(FieldType.INT, popInt());
+        } else if (type instanceof FieldType.Short) {
+            return new Value(FieldType.SHORT, (short)popInt());
+        } else if (type instanceof FieldType.Byte) {
+            return new Value(FieldType.BYTE, (byte)popInt());
+        } else if (type instanceof FieldType.Char) {
+            return new Value(FieldType.CHAR, (char)popInt());
+        } else if (type instanceof FieldType.Boolean) {
+            return new Value(FieldType.BOOLEAN, popInt() != 0);
+        } else if (type instanceof FieldType.Long) {
+            return new Value(FieldType.LONG, popLong());
+        } else if (type instanceof FieldType.Float) {
+            return new Value(FieldType.FLOAT, popFloat());
+        } else if (type instanceof FieldType.Double) {
+            return new Value(FieldType.DOUBLE, popDouble());
+        } else {
+            return popReference();
+        }
+    }
+
+    // Pop the arguments of `method` including the receiver, in the order they were pushed
+    Value[] popArguments(MethodInfo method) {
+        List<FieldType> parameters = method.getDescriptor().getParameters();
+        int receiverSlots = (method.isStatic() ? 0 : 1);
+        Value[] args = new Value[parameters.size() + receiverSlots];
+        for (int i = parameters.size() - 1; i >= 0; i--) {
+            args[i + receiverSlots] = popValue(parameters.get(i));
+        }
+        if (receiverSlots == 1) {
+            args[0] = popReference();
+        }
+        return args;
+    }
+
+    // A frame of an interpreted method. Its locals and operand stack are the slots from `base`.
+    static class Frame {
+        Value.Class thisClass;
+        MethodInfo method;
+        ConstantPool constantPool;
+        int[] words; // of PackedCode
+        int base;
+        int pc; // saved while a callee is running
+    }
+}
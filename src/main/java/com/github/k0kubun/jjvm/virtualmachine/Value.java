@@ -14,6 +14,7 @@ public class Value {
     // getValue() is responsible for deserializing the `value` depending on the `type`.
     //   I                   => Integer
     //   S                   => Integer
+    //   B                   => Integer
     //   [I                  => int[]
     //   Ljava/lang/String;  => Value.Object
     //   [Ljava/lang/String; => Value.Object[]
@@ -39,6 +40,10 @@ public class Value {
         this(type, (int)value);
     }
 
+    public Value(FieldType.Byte type, byte value) {
+        this(type, (int)value);
+    }
+
     public Value(FieldType.Long type, long value) {
         this(type, (Long)value);
     }
@@ -88,7 +93,7 @@ public class Value {
 
     // This should be used only when type conversion is needed. Indicator: "must be of type int"
     public int getIntValue() {
-        if (type instanceof FieldType.Int || type instanceof FieldType.Short) {
+        if (type instanceof FieldType.Int || type instanceof FieldType.Short || type instanceof FieldType.Byte) {
             return (int)value;
         } else if (type instanceof FieldType.Char) {
             return (int)((char)value);
@@ -1,6 +1,5 @@
 package com.github.k0kubun.jjvm.virtualmachine;
 
-import com.github.k0kubun.jjvm.classfile.AttributeInfo;
 import com.github.k0kubun.jjvm.classfile.ClassFile;
 import com.github.k0kubun.jjvm.classfile.ClassFileParser;
 import com.github.k0kubun.jjvm.classfile.ConstantInfo;
@@ -15,20 +14,48 @@ import java.util.Map;
 import java.util.Set;
 
 // A class hodling VM states and providing VM-related interfaces.
-public class VirtualMachine {
+public class VirtualMachine implements AutoCloseable {
+    // Guest frames are not on the host stack, so this is independent of -Xss.
+    public static final int DEFAULT_MAX_FRAMES = 4096;
+
     private final Map<String, Value.Class> classMap;
     private final ClassLoader classLoader;
     private final Set<String> clinitBlacklist;
     private int callDepth;
     private final boolean traceCall;
+    private Value.Class currentClass; // of the method being executed, null on boot
+    private final ClassLoadStatistics statistics; // null unless -Xjjvmstat:classload
+    private final ThreadStack stack; // of the main thread, which is the only thread for now
+    private final BytecodeInterpreter interpreter;
+    private Thread dumpHook; // dumps the shared class archive if the VM is not closed. null unless ShareMode.DUMP
 
-    // Threads::create_vm() equivalent
     public VirtualMachine(String classPath, boolean trace) {
+        this(classPath, trace, ShareMode.OFF);
+    }
+
+    public VirtualMachine(String classPath, boolean trace, ShareMode shareMode) {
+        this(classPath, trace, shareMode, false, null);
+    }
+
+    public VirtualMachine(String classPath, boolean trace, ShareMode shareMode, boolean prefetch, ClassLoadStatistics statistics) {
+        this(classPath, trace, shareMode, prefetch, statistics, DEFAULT_MAX_FRAMES);
+    }
+
+    // Threads::create_vm() equivalent. `statistics` may be null. `maxFrames` limits the depth of guest calls.
+    public VirtualMachine(String classPath, boolean trace, ShareMode shareMode, boolean prefetch, ClassLoadStatistics statistics,
+                          int maxFrames) {
         classMap = new HashMap<>();
-        classLoader = new ClassLoader(classPath);
+        classLoader = new ClassLoader(classPath, shareMode, prefetch, statistics);
+        this.statistics = statistics;
+        if (shareMode == ShareMode.DUMP) {
+            dumpHook = new Thread(classLoader::dumpSharedArchive);
+            Runtime.getRuntime().addShutdownHook(dumpHook);
+        }
 
         callDepth = 0;
         traceCall = trace;
+        stack = new ThreadStack(ThreadStack.DEFAULT_SIZE, maxFrames);
+        interpreter = new BytecodeInterpreter(this, stack);
 
         clinitBlacklist = new HashSet<>();
         initializeClinitBlacklist();
@@ -40,15 +67,31 @@ public class VirtualMachine {
         callInitializeSystemClass();
     }
 
-    // Call an instance method
-    public Value callMethod(String methodName, MethodInfo.Descriptor methodType, Value[] args) {
-        Value.Class klass = getClass(args[0].getType());
-        MethodSearchResult result = searchMethod(klass, methodName, methodType);
-        return executeMethod(result.klass, result.method, args);
+    // Dump the shared class archive for ShareMode.DUMP, and release jars and threads held by the class loader.
+    // The VM must not be used after this.
+    @Override
+    public void close() {
+        if (dumpHook != null) {
+            classLoader.dumpSharedArchive();
+            try {
+                Runtime.getRuntime().removeShutdownHook(dumpHook); // not to retain the class loader until exit
+            } catch (IllegalStateException e) {
+                // the host JVM is shutting down
+            }
+            dumpHook = null;
+        }
+        classLoader.close();
+    }
+
+    // Find an instance method to call. The receiver and arguments are on the top of the stack.
+    MethodSearchResult findMethod(String methodName, MethodInfo.Descriptor methodType) {
+        Value.Class klass = getClass(stack.peekReference(methodType.getParameterSlots()).getType());
+        return searchMethod(klass, methodName, methodType);
     }
 
-    // Call an instance method, but specialized for invokespecial
-    public Value callMethodSpecial(String methodClassName, String methodName, MethodInfo.Descriptor methodType, Value[] args) {
+    // Find an instance method to call, but specialized for invokespecial. null if the call should be ignored,
+    // whose receiver is popped here.
+    MethodSearchResult findMethodSpecial(String methodClassName, String methodName, MethodInfo.Descriptor methodType) {
         Value.Class klass = getClass(methodClassName);
         MethodSearchResult result;
         try {
@@ -57,19 +100,67 @@ public class VirtualMachine {
             if (methodType.getReturn() instanceof MethodInfo.VoidDescriptor
                     && methodType.getParameters().size() == 0 && methodName.equals("<init>")) {
                 // ignore undefined <init>:()V call
+                stack.popReference();
                 return null;
             } else {
                 throw e;
             }
         }
         // TODO: handle `protected` specially
-        return executeMethod(result.klass, result.method, args);
+        return result;
     }
 
-    public Value callStaticMethod(String methodClassName, String methodName, MethodInfo.Descriptor methodType, Value[] args) {
+    MethodSearchResult findStaticMethod(String methodClassName, String methodName, MethodInfo.Descriptor methodType) {
         Value.Class klass = getClass(methodClassName);
-        MethodSearchResult result = searchMethod(klass, methodName, methodType);
-        return executeMethod(result.klass, result.method, args);
+        return searchMethod(klass, methodName, methodType);
+    }
+
+    public Value callStaticMethod(String methodClassName, String methodName, MethodInfo.Descriptor methodType, Value[] args) {
+        for (Value arg : args) {
+            stack.pushValue(arg);
+        }
+        MethodSearchResult result = findStaticMethod(methodClassName, methodName, methodType);
+        return executeMethod(result.klass, result.method);
+    }
+
+    // Call a native or stub method with the arguments on the top of the stack, and push its return value.
+    // false if it should be interpreted instead, leaving the arguments.
+    boolean callExternalMethod(Value.Class klass, MethodInfo method) {
+        int base = stack.getPointer() - method.getDescriptor().getParameterSlots() - (method.isStatic() ? 0 : 1);
+        if (traceCall) {
+            for (int i = 0; i < callDepth; i++)
+                System.out.print("  ");
+            System.out.println(klass.getClassFile().getThisClassName() + "." + method.getName());
+        }
+
+        Value ret;
+        if (method.isNative()) {
+            Value[] args = stack.popArguments(method);
+            ret = NativeMethod.dispatch(klass, method, args);
+        } else {
+            MethodStubResult result = dispatchStubMethod(klass, method, base);
+            if (!result.isStub) {
+                return false;
+            }
+            stack.setPointer(base);
+            ret = result.value;
+        }
+        if (ret != null) { // XXX: do we need to verify return type is void?
+            stack.pushValue(ret);
+        }
+        return true;
+    }
+
+    // Called when BytecodeInterpreter starts interpreting a method
+    void enterMethod(Value.Class klass) {
+        callDepth++;
+        currentClass = klass;
+    }
+
+    // Called when BytecodeInterpreter returns to `caller` from a method
+    void leaveMethod(Value.Class caller) {
+        currentClass = caller;
+        callDepth--;
     }
 
     public Value.Class getClass(String name) {
@@ -83,7 +174,7 @@ public class VirtualMachine {
         }
 
         for (FieldInfo fieldInfo : classFile.getFields()) {
-            if (fieldInfo.getAccessFlags().contains(FieldInfo.AccessFlag.ACC_STATIC))
+            if (fieldInfo.isStatic())
                 continue;
 
             FieldType fieldType = fieldInfo.getDescriptor();
@@ -141,11 +232,13 @@ public class VirtualMachine {
     }
 
     private Value.Class initializeClass(String klass) {
+        Value.Class trigger = currentClass;
+        long clinitNanos = 0;
         ClassFile classFile = classLoader.loadClass(klass);
         Value.Class value = new Value.Class(classFile);
 
         for (FieldInfo field : classFile.getFields()) {
-            if (!field.getAccessFlags().contains(FieldInfo.AccessFlag.ACC_STATIC))
+            if (!field.isStatic())
                 continue;
 
             FieldType fieldType = field.getDescriptor();
@@ -164,12 +257,17 @@ public class VirtualMachine {
                 MethodSearchResult result = searchMethod(value, "<clinit>", clinitType);
                 String methodClass = result.klass.getClassFile().getThisClassName();
                 if (methodClass.equals(klass) || !classMap.containsKey(methodClass)) { // avoid duplicated clinit by inheritance
-                    executeMethod(result.klass, result.method, new Value[0]);
+                    long start = System.nanoTime();
+                    executeMethod(result.klass, result.method);
+                    clinitNanos = System.nanoTime() - start;
                 }
             } catch (NoMethodException e) {
                 // ignore undefined <clinit>:()V call
             }
         }
+        if (statistics != null) {
+            statistics.recordInitialize(klass, (trigger == null ? null : trigger.getClassFile().getThisClassName()), clinitNanos);
+        }
         return value;
     }
 
@@ -208,7 +306,7 @@ public class VirtualMachine {
         Value.Class system = classMap.get("java/lang/System");
         MethodSearchResult result = searchMethod(system, "initializeSystemClass",
                 ClassFileParser.DescriptorParser.parseMethod("()V"));
-        executeMethod(result.klass, result.method, new Value[0]);
+        executeMethod(result.klass, result.method);
     }
 
     private FieldType fieldType(String type) {
@@ -216,10 +314,9 @@ public class VirtualMachine {
     }
 
     private MethodSearchResult searchMethod(Value.Class klass, String methodName, MethodInfo.Descriptor methodType) {
-        for (MethodInfo method : klass.getClassFile().getMethods()) {
-            if (method.getName().equals(methodName) && method.getDescriptor().equals(methodType)) {
-                return new MethodSearchResult(klass, method);
-            }
+        MethodInfo method = klass.getClassFile().findMethod(methodName, methodType);
+        if (method != null) {
+            return new MethodSearchResult(klass, method);
         }
         if (klass.getClassFile().getSuperClass() != null) {
             Value.Class superClass = getClass(klass.getClassFile().getSuperClass().getName());
@@ -229,32 +326,32 @@ public class VirtualMachine {
                 klass.getClassFile().getThisClassName(), methodName, methodType.toString()));
     }
 
-    private Value executeMethod(Value.Class klass, MethodInfo method, Value[] args) {
-        if (traceCall) {
-            for (int i = 0; i < callDepth; i++)
-                System.out.print("  ");
-            System.out.println(klass.getClassFile().getThisClassName() + "." + method.getName());
-        }
-
-        if (method.getAccessFlags().contains(MethodInfo.AccessFlag.ACC_NATIVE)) {
-            return NativeMethod.dispatch(klass, method, args);
-        }
-
-        MethodStubResult result = dispatchStubMethod(klass, method, args);
-        if (result.isStub) {
-            return result.value;
+    // Execute a method from outside of BytecodeInterpreter, with the arguments on the top of the stack, and
+    // pop them. Methods it calls are run by the same BytecodeInterpreter#execute.
+    private Value executeMethod(Value.Class klass, MethodInfo method) {
+        int base = stack.getPointer() - method.getDescriptor().getParameterSlots() - (method.isStatic() ? 0 : 1);
+        if (callExternalMethod(klass, method)) {
+            if (stack.getPointer() == base) {
+                return null;
+            }
+            return stack.popValue((FieldType)method.getDescriptor().getReturn());
         }
 
         callDepth++;
-        AttributeInfo.Code code = (AttributeInfo.Code)method.getAttributes().get("Code");
-        Value ret = new BytecodeInterpreter(this, klass).execute(code, args, method.getDescriptor().getReturn());
+        Value.Class caller = currentClass;
+        currentClass = klass;
+        Value ret = interpreter.execute(klass, method, base);
+        currentClass = caller;
         callDepth--;
         return ret;
     }
 
     // Temporary measures... FIXME: This method should go away
-    private MethodStubResult dispatchStubMethod(Value.Class klass, MethodInfo method, Value[] args) {
+    // The arguments are the locals of the method from `base` of the stack.
+    private MethodStubResult dispatchStubMethod(Value.Class klass, MethodInfo method, int base) {
         String className = klass.getClassFile().getThisClassName();
+        long[] primitives = stack.getPrimitives();
+        Value[] references = stack.getReferences();
         Value ret = Value.Null();
         boolean isStub = true;
 
@@ -263,7 +360,7 @@ public class VirtualMachine {
             ret = null;
         }
         else if (className.equals("java/util/Properties") && method.getName().equals("getProperty")) {
-            String property = String.valueOf((char[])((Value.Object)args[1].getValue()).getField("value").getValue());
+            String property = String.valueOf((char[])((Value.Object)references[base + 1].getValue()).getField("value").getValue());
             if (property.equals("sun.stdout.encoding") || property.equals("sun.stderr.encoding")) { // how can we get it properly?
                 ret = new Value(new FieldType.ObjectType("java/lang/String"), new Value.Object("UTF-8"));
             } else {
@@ -271,7 +368,7 @@ public class VirtualMachine {
             }
         }
         else if (className.equals("java/util/Properties") && method.getName().equals("setProperty")) {
-            ret = args[1];
+            ret = references[base + 1];
         }
         // Following methods are Not working...
         else if (className.equals("java/util/concurrent/atomic/AtomicReferenceFieldUpdater") && method.getName().equals("newUpdater")) {
@@ -316,24 +413,33 @@ public class VirtualMachine {
         }
         // Current stub end of println:
         else if (className.equals("sun/nio/cs/StreamEncoder") && method.getName().equals("implWrite")) { // charset handling is broken
-            Value.Object streamEncoder = (Value.Object)args[0].getValue();
+            Value.Object streamEncoder = (Value.Object)references[base].getValue();
             Value.Object printStream = (Value.Object)streamEncoder.getField("out").getValue();
             Value.Object bufferedOutputStream = (Value.Object)printStream.getField("out").getValue();
             Value.Object fileOutputStream = (Value.Object)bufferedOutputStream.getField("out").getValue();
             Value.Object fileDescriptor = (Value.Object)fileOutputStream.getField("fd").getValue();
             PrintStream stream = ((int)fileDescriptor.getField("fd").getValue() == 1) ? System.out : System.err;
 
-            int off = (int)args[2].getValue();
-            int len = (int)args[3].getValue();
+            int off = (int)primitives[base + 2];
+            int len = (int)primitives[base + 3];
             for (int i = off; i < off + len; i++) {
-                stream.print(((char[])args[1].getValue())[i]);
+                stream.print(((char[])references[base + 1].getValue())[i]);
             }
             ret = null;
         }
         else if ((className.equals("java/lang/Long") // getChars is broken
                 || className.equals("java/lang/Float") // FloatingDecimal classfile parse may be failing
                 || className.equals("java/lang/Double")) && method.getName().equals("toString")) {
-            String str = args[0].getValue().toString();
+            String str;
+            if (!method.isStatic()) {
+                str = references[base].getValue().toString();
+            } else if (className.equals("java/lang/Long")) {
+                str = Long.toString(primitives[base]);
+            } else if (className.equals("java/lang/Float")) {
+                str = Float.toString(Float.intBitsToFloat((int)primitives[base]));
+            } else {
+                str = Double.toString(Double.longBitsToDouble(primitives[base]));
+            }
             ret = new Value(new FieldType.ObjectType("java/lang/String"), new Value.Object(str));
         }
         else {
@@ -342,13 +448,20 @@ public class VirtualMachine {
         return new MethodStubResult(isStub, ret);
     }
 
+    // -Xjjvmshare:{off,dump,on}
+    public enum ShareMode {
+        OFF,
+        DUMP, // record bootstrap classes and write them to the shared class archive on exit
+        ON,   // load bootstrap classes from the shared class archive if archived
+    }
+
     private static class NoMethodException extends RuntimeException {
         public NoMethodException(String message) {
             super(message);
         }
     }
 
-    private static class MethodSearchResult {
+    static class MethodSearchResult {
         final Value.Class klass;
         final MethodInfo method;
 
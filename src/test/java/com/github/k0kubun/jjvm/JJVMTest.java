@@ -72,36 +72,69 @@ public class JJVMTest {
         compileAndTest("Obj");
     }
 
+    @Test
+    public void testRecursion() {
+        compileAndTest("Recursion");
+    }
+
+    @Test
+    public void testDeepRecursion() {
+        // 100000 frames exceed both the default thread stack of java and the default frame limit of jjvm
+        compileAndTest(Arrays.asList("-Xss64m"), Arrays.asList("-Xjjvmmaxframes:200000"), "Recursion", "deep");
+    }
+
     @Test
     public void testString() {
         compileAndTest("Str");
     }
 
+    @Test
+    public void testSuperinstruction() {
+        compileAndTest("Superinstruction");
+    }
+
+    @Test
+    public void testSwitch() {
+        compileAndTest("Switch");
+    }
+
+    @Test
+    public void testWide() {
+        compileAndTest("Wide");
+    }
+
     @Test
     public void testBootstrapHelp() {
         testJJVMCommand("-cp", "build/classes/java/main", "com.github.k0kubun.jjvm.JJVM", "-help");
     }
 
     private void compileAndTest(String klass, String... args) {
+        compileAndTest(new ArrayList<>(), new ArrayList<>(), klass, args);
+    }
+
+    // `javaOptions` are given only to java, and `jjvmOptions` only to jjvm.
+    private void compileAndTest(List<String> javaOptions, List<String> jjvmOptions, String klass, String... args) {
         CommandResult result = runCommand("javac", BASE_PATH + klass + ".java");
         assertEquals(0, result.status);
 
         List<String> command = new ArrayList<>(Arrays.asList("-cp", BASE_PATH, klass));
         command.addAll(Arrays.asList(args));
-        testJJVMCommand(command);
+        testJJVMCommand(javaOptions, jjvmOptions, command);
     }
 
     private void testJJVMCommand(String... args) {
-        testJJVMCommand(Arrays.asList(args));
+        testJJVMCommand(new ArrayList<>(), new ArrayList<>(), Arrays.asList(args));
     }
 
-    private void testJJVMCommand(List<String> args) {
+    private void testJJVMCommand(List<String> javaOptions, List<String> jjvmOptions, List<String> args) {
         List<String> command = new ArrayList<>(Arrays.asList("java"));
+        command.addAll(javaOptions);
         command.addAll(args);
         CommandResult java = runCommand(command);
         assertEquals(0, java.status);
 
         command = new ArrayList<>(Arrays.asList("build/install/jjvm/bin/jjvm"));
+        command.addAll(jjvmOptions);
         command.addAll(args);
         CommandResult jjvm = runCommand(command);
         assertEquals(0, jjvm.status);
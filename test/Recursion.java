@@ -0,0 +1,50 @@
+public class Recursion {
+    public static void main(String[] args) {
+        if (args.length > 0) {
+            // Deeper than the default frame limit of jjvm
+            System.out.println(depth(100000));
+            return;
+        }
+
+        System.out.println(fib(20));
+        System.out.println(factorial(20));
+        System.out.println(isEven(1001));
+        System.out.println(isOdd(1001));
+        System.out.println(depth(3000));
+    }
+
+    private static int fib(int n) {
+        if (n < 2) {
+            return n;
+        }
+        return fib(n - 1) + fib(n - 2);
+    }
+
+    private static long factorial(int n) {
+        if (n == 0) {
+            return 1;
+        }
+        return n * factorial(n - 1);
+    }
+
+    private static boolean isEven(int n) {
+        if (n == 0) {
+            return true;
+        }
+        return isOdd(n - 1);
+    }
+
+    private static boolean isOdd(int n) {
+        if (n == 0) {
+            return false;
+        }
+        return isEven(n - 1);
+    }
+
+    private static int depth(int n) {
+        if (n == 0) {
+            return 0;
+        }
+        return depth(n - 1) + 1;
+    }
+}
@@ -0,0 +1,151 @@
+public class Superinstruction {
+    private int value;
+
+    public Superinstruction(int value) {
+        this.value = value;
+    }
+
+    public static void main(String[] args) {
+        Superinstruction a = new Superinstruction(3);
+        Superinstruction b = new Superinstruction(5);
+
+        System.out.println(a.sumValue(4));
+        System.out.println(a.pickValue(b, true));
+        System.out.println(a.pickValue(b, false));
+
+        System.out.println(countLt(0, 5));
+        System.out.println(countLe(0, 5));
+        System.out.println(countGt(5, 0));
+        System.out.println(countGe(5, 0));
+        System.out.println(countNe(0, 5));
+        System.out.println(countEq(3, 3));
+        System.out.println(compareAcross(1, 2, 3, true));
+        System.out.println(compareAcross(1, 2, 3, false));
+        System.out.println(compareAcross(4, 2, 3, true));
+
+        System.out.println(addLoop(10));
+        System.out.println(addAcross(1, 2, true));
+        System.out.println(addAcross(1, 2, false));
+
+        int[] xs = new int[] { 1, 2, 3 };
+        int[] ys = new int[] { 4, 5 };
+        System.out.println(sumLength(xs, 4));
+        System.out.println(pickLength(xs, ys, true));
+        System.out.println(pickLength(xs, ys, false));
+    }
+
+    // aload_0; getfield at the loop head, which is a branch target
+    private int sumValue(int n) {
+        int sum = 0;
+        int i = 0;
+        while (this.value + i < n + this.value) {
+            sum += this.value;
+            i++;
+        }
+        return sum;
+    }
+
+    // getfield is a branch target, so aload and getfield are not fused
+    private int pickValue(Superinstruction other, boolean self) {
+        return (self ? this : other).value;
+    }
+
+    // iload; iload; if_icmpXX at loop heads, which are branch targets
+    private static int countLt(int i, int n) {
+        int count = 0;
+        while (i < n) { // if_icmpge
+            count++;
+            i++;
+        }
+        return count;
+    }
+
+    private static int countLe(int i, int n) {
+        int count = 0;
+        while (i <= n) { // if_icmpgt
+            count++;
+            i++;
+        }
+        return count;
+    }
+
+    private static int countGt(int i, int n) {
+        int count = 0;
+        while (i > n) { // if_icmple
+            count++;
+            i--;
+        }
+        return count;
+    }
+
+    private static int countGe(int i, int n) {
+        int count = 0;
+        while (i >= n) { // if_icmplt
+            count++;
+            i--;
+        }
+        return count;
+    }
+
+    private static int countNe(int i, int n) {
+        int count = 0;
+        while (i != n) { // if_icmpeq
+            count++;
+            i++;
+        }
+        return count;
+    }
+
+    private static int countEq(int i, int n) {
+        int count = 0;
+        while (i == n) { // if_icmpne
+            count++;
+            n++;
+        }
+        return count;
+    }
+
+    // The second iload is a branch target, so the three are not fused
+    private static int compareAcross(int a, int b, int c, boolean first) {
+        if ((first ? a : b) < c) {
+            return 1;
+        }
+        return 0;
+    }
+
+    // iload; iconst; iadd; istore at the loop head, which is a branch target
+    private static int addLoop(int n) {
+        int sum = 0;
+        int i = 0;
+        while (true) {
+            i = sum + 3;
+            if (i > n) {
+                return sum;
+            }
+            sum = i;
+        }
+    }
+
+    // iconst is a branch target, so the four are not fused
+    private static int addAcross(int a, int b, boolean first) {
+        int j = (first ? a : b) + 100;
+        return j;
+    }
+
+    // aload; arraylength at the loop head, which is a branch target
+    private static int sumLength(int[] xs, int n) {
+        int sum = 0;
+        while (true) {
+            int length = xs.length;
+            if (sum >= n * length) {
+                return sum;
+            }
+            sum += length;
+        }
+    }
+
+    // arraylength is a branch target, so aload and arraylength are not fused
+    private static int pickLength(int[] xs, int[] ys, boolean first) {
+        return (first ? xs : ys).length;
+    }
+}
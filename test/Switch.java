@@ -0,0 +1,52 @@
+public class Switch {
+    public static void main(String[] args) {
+        for (int i = -1; i <= 6; i++) {
+            System.out.println(dense(i));
+        }
+        System.out.println(sparse(Integer.MIN_VALUE));
+        System.out.println(sparse(-1000));
+        System.out.println(sparse(0));
+        System.out.println(sparse(1000));
+        System.out.println(sparse(Integer.MAX_VALUE));
+        System.out.println(sparse(1));
+        System.out.println(sparse(Integer.MIN_VALUE + 1));
+        System.out.println(sparse(Integer.MAX_VALUE - 1));
+    }
+
+    // tableswitch
+    private static int dense(int i) {
+        switch (i) {
+            case 0:
+                return 10;
+            case 1:
+                return 11;
+            case 2:
+                return 12;
+            case 3: // fall through
+            case 4:
+                return 14;
+            case 5:
+                return 15;
+            default:
+                return -1;
+        }
+    }
+
+    // lookupswitch
+    private static int sparse(int i) {
+        switch (i) {
+            case Integer.MIN_VALUE:
+                return 1;
+            case -1000:
+                return 2;
+            case 0:
+                return 3;
+            case 1000:
+                return 4;
+            case Integer.MAX_VALUE:
+                return 5;
+            default:
+                return -1;
+        }
+    }
+}
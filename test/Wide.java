@@ -0,0 +1,55 @@
+public class Wide {
+    public static void main(String[] args) {
+        System.out.println(ints());
+        System.out.println(longs());
+    }
+
+    // Locals from 256 need wide iload, istore and iinc
+    private static int ints() {
+        int v0 = 0, v1 = 1, v2 = 2, v3 = 3, v4 = 4, v5 = 5, v6 = 6, v7 = 7, v8 = 8, v9 = 9, v10 = 10, v11 = 11, v12 = 12, v13 = 13, v14 = 14, v15 = 15;
+        int v16 = 16, v17 = 17, v18 = 18, v19 = 19, v20 = 20, v21 = 21, v22 = 22, v23 = 23, v24 = 24, v25 = 25, v26 = 26, v27 = 27, v28 = 28, v29 = 29, v30 = 30, v31 = 31;
+        int v32 = 32, v33 = 33, v34 = 34, v35 = 35, v36 = 36, v37 = 37, v38 = 38, v39 = 39, v40 = 40, v41 = 41, v42 = 42, v43 = 43, v44 = 44, v45 = 45, v46 = 46, v47 = 47;
+        int v48 = 48, v49 = 49, v50 = 50, v51 = 51, v52 = 52, v53 = 53, v54 = 54, v55 = 55, v56 = 56, v57 = 57, v58 = 58, v59 = 59, v60 = 60, v61 = 61, v62 = 62, v63 = 63;
+        int v64 = 64, v65 = 65, v66 = 66, v67 = 67, v68 = 68, v69 = 69, v70 = 70, v71 = 71, v72 = 72, v73 = 73, v74 = 74, v75 = 75, v76 = 76, v77 = 77, v78 = 78, v79 = 79;
+        int v80 = 80, v81 = 81, v82 = 82, v83 = 83, v84 = 84, v85 = 85, v86 = 86, v87 = 87, v88 = 88, v89 = 89, v90 = 90, v91 = 91, v92 = 92, v93 = 93, v94 = 94, v95 = 95;
+        int v96 = 96, v97 = 97, v98 = 98, v99 = 99, v100 = 100, v101 = 101, v102 = 102, v103 = 103, v104 = 104, v105 = 105, v106 = 106, v107 = 107, v108 = 108, v109 = 109, v110 = 110, v111 = 111;
+        int v112 = 112, v113 = 113, v114 = 114, v115 = 115, v116 = 116, v117 = 117, v118 = 118, v119 = 119, v120 = 120, v121 = 121, v122 = 122, v123 = 123, v124 = 124, v125 = 125, v126 = 126, v127 = 127;
+        int v128 = 128, v129 = 129, v130 = 130, v131 = 131, v132 = 132, v133 = 133, v134 = 134, v135 = 135, v136 = 136, v137 = 137, v138 = 138, v139 = 139, v140 = 140, v141 = 141, v142 = 142, v143 = 143;
+        int v144 = 144, v145 = 145, v146 = 146, v147 = 147, v148 = 148, v149 = 149, v150 = 150, v151 = 151, v152 = 152, v153 = 153, v154 = 154, v155 = 155, v156 = 156, v157 = 157, v158 = 158, v159 = 159;
+        int v160 = 160, v161 = 161, v162 = 162, v163 = 163, v164 = 164, v165 = 165, v166 = 166, v167 = 167, v168 = 168, v169 = 169, v170 = 170, v171 = 171, v172 = 172, v173 = 173, v174 = 174, v175 = 175;
+        int v176 = 176, v177 = 177, v178 = 178, v179 = 179, v180 = 180, v181 = 181, v182 = 182, v183 = 183, v184 = 184, v185 = 185, v186 = 186, v187 = 187, v188 = 188, v189 = 189, v190 = 190, v191 = 191;
+        int v192 = 192, v193 = 193, v194 = 194, v195 = 195, v196 = 196, v197 = 197, v198 = 198, v199 = 199, v200 = 200, v201 = 201, v202 = 202, v203 = 203, v204 = 204, v205 = 205, v206 = 206, v207 = 207;
+        int v208 = 208, v209 = 209, v210 = 210, v211 = 211, v212 = 212, v213 = 213, v214 = 214, v215 = 215, v216 = 216, v217 = 217, v218 = 218, v219 = 219, v220 = 220, v221 = 221, v222 = 222, v223 = 223;
+        int v224 = 224, v225 = 225, v226 = 226, v227 = 227, v228 = 228, v229 = 229, v230 = 230, v231 = 231, v232 = 232, v233 = 233, v234 = 234, v235 = 235, v236 = 236, v237 = 237, v238 = 238, v239 = 239;
+        int v240 = 240, v241 = 241, v242 = 242, v243 = 243, v244 = 244, v245 = 245, v246 = 246, v247 = 247, v248 = 248, v249 = 249, v250 = 250, v251 = 251, v252 = 252, v253 = 253, v254 = 254, v255 = 255;
+        int sum = v0 + v255;
+        for (int i = 0; i < 10; i++) {
+            sum += i;
+        }
+        int x = sum + 3;
+        x += 1000; // wide iinc also for a constant out of a byte
+        x -= 200;
+        int y = x;
+        y++;
+        return v240 + x + y + sum;
+    }
+
+    // Long locals from 256 need wide lload and lstore
+    private static long longs() {
+        long l0 = 0L, l1 = 1L, l2 = 2L, l3 = 3L, l4 = 4L, l5 = 5L, l6 = 6L, l7 = 7L, l8 = 8L, l9 = 9L, l10 = 10L, l11 = 11L, l12 = 12L, l13 = 13L, l14 = 14L, l15 = 15L;
+        long l16 = 16L, l17 = 17L, l18 = 18L, l19 = 19L, l20 = 20L, l21 = 21L, l22 = 22L, l23 = 23L, l24 = 24L, l25 = 25L, l26 = 26L, l27 = 27L, l28 = 28L, l29 = 29L, l30 = 30L, l31 = 31L;
+        long l32 = 32L, l33 = 33L, l34 = 34L, l35 = 35L, l36 = 36L, l37 = 37L, l38 = 38L, l39 = 39L, l40 = 40L, l41 = 41L, l42 = 42L, l43 = 43L, l44 = 44L, l45 = 45L, l46 = 46L, l47 = 47L;
+        long l48 = 48L, l49 = 49L, l50 = 50L, l51 = 51L, l52 = 52L, l53 = 53L, l54 = 54L, l55 = 55L, l56 = 56L, l57 = 57L, l58 = 58L, l59 = 59L, l60 = 60L, l61 = 61L, l62 = 62L, l63 = 63L;
+        long l64 = 64L, l65 = 65L, l66 = 66L, l67 = 67L, l68 = 68L, l69 = 69L, l70 = 70L, l71 = 71L, l72 = 72L, l73 = 73L, l74 = 74L, l75 = 75L, l76 = 76L, l77 = 77L, l78 = 78L, l79 = 79L;
+        long l80 = 80L, l81 = 81L, l82 = 82L, l83 = 83L, l84 = 84L, l85 = 85L, l86 = 86L, l87 = 87L, l88 = 88L, l89 = 89L, l90 = 90L, l91 = 91L, l92 = 92L, l93 = 93L, l94 = 94L, l95 = 95L;
+        long l96 = 96L, l97 = 97L, l98 = 98L, l99 = 99L, l100 = 100L, l101 = 101L, l102 = 102L, l103 = 103L, l104 = 104L, l105 = 105L, l106 = 106L, l107 = 107L, l108 = 108L, l109 = 109L, l110 = 110L, l111 = 111L;
+        long l112 = 112L, l113 = 113L, l114 = 114L, l115 = 115L, l116 = 116L, l117 = 117L, l118 = 118L, l119 = 119L, l120 = 120L, l121 = 121L, l122 = 122L, l123 = 123L, l124 = 124L, l125 = 125L, l126 = 126L, l127 = 127L;
+        long sum = l0 + l127;
+        for (int i = 0; i < 10; i++) {
+            sum += i;
+        }
+        String s = "wide";
+        System.out.println(s);
+        return sum + l112;
+    }
+}